@@ -25,15 +25,20 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import javax.annotation.Nullable;
 import okhttp3.internal.Util;
 import okhttp3.internal.cache.CacheRequest;
 import okhttp3.internal.cache.CacheStrategy;
 import okhttp3.internal.cache.DiskLruCache;
+import okhttp3.internal.cache.EvictionPolicy;
 import okhttp3.internal.cache.InternalCache;
+import okhttp3.internal.cache.RevalidationTracker;
 import okhttp3.internal.http.HttpHeaders;
 import okhttp3.internal.http.HttpMethod;
 import okhttp3.internal.http.StatusLine;
@@ -135,12 +140,15 @@ import okio.Source;
  * {@link CacheControl#FORCE_CACHE} that address the use cases above.
  */
 public final class Cache implements Closeable, Flushable {
-  private static final int VERSION = 201105;
+  private static final int VERSION = 201106;
   private static final int ENTRY_METADATA = 0;
   private static final int ENTRY_BODY = 1;
   private static final int ENTRY_COUNT = 2;
 
-  final InternalCache internalCache = new InternalCache() {
+  final InternalCache internalCache = new CacheAdapter();
+
+  /** Adapts this cache to the interfaces used by the cache interceptor. */
+  private final class CacheAdapter implements InternalCache, RevalidationTracker {
     @Override public Response get(Request request) throws IOException {
       return Cache.this.get(request);
     }
@@ -164,10 +172,30 @@ public final class Cache implements Closeable, Flushable {
     @Override public void trackResponse(CacheStrategy cacheStrategy) {
       Cache.this.trackResponse(cacheStrategy);
     }
-  };
+
+    @Override public boolean startRevalidation(Response cached) {
+      return Cache.this.startRevalidation(cached);
+    }
+
+    @Override public void finishRevalidation(Response cached) {
+      Cache.this.finishRevalidation(cached);
+    }
+  }
 
   final DiskLruCache cache;
 
+  /** True to store responses under {@link #fastKey} rather than {@link #key}. */
+  final boolean fastKeys;
+
+  /** True to also look up responses stored under {@link #key} when {@link #fastKeys} is set. */
+  final boolean readMd5Keys;
+
+  /** The number of responses stored per URL for requests selecting different variants. */
+  final int maxVariantsPerUrl;
+
+  /** Serializes changes to the variant index stored under each key, striped by key. */
+  private final Object[] indexLocks = newLocks(16);
+
   /* read and write statistics, all guarded by 'this' */
   int writeSuccessCount;
   int writeAbortCount;
@@ -175,24 +203,57 @@ public final class Cache implements Closeable, Flushable {
   private int hitCount;
   private int requestCount;
 
+  /** Keys of cached responses being revalidated in the background. Guarded by 'this'. */
+  private final Set<String> revalidatingKeys = new HashSet<>();
+
   public Cache(File directory, long maxSize) {
     this(directory, maxSize, FileSystem.SYSTEM);
   }
 
   Cache(File directory, long maxSize, FileSystem fileSystem) {
     this.cache = DiskLruCache.create(fileSystem, directory, VERSION, ENTRY_COUNT, maxSize);
+    this.fastKeys = false;
+    this.readMd5Keys = false;
+    this.maxVariantsPerUrl = 1;
+  }
+
+  Cache(Builder builder) {
+    this.cache = DiskLruCache.create(
+        builder.fileSystem, builder.directory, VERSION, ENTRY_COUNT, builder.maxSize);
+    this.fastKeys = builder.fastKeys;
+    this.readMd5Keys = builder.readMd5Keys;
+    this.maxVariantsPerUrl = builder.maxVariantsPerUrl;
+    cache.setMappedReadThreshold(builder.mappedReadThreshold);
+    cache.setEvictionPolicy(builder.evictionPolicy);
   }
 
   public static String key(HttpUrl url) {
     return ByteString.encodeUtf8(url.toString()).md5().hex();
   }
 
+  /**
+   * Returns a key for {@code url} that is cheaper to compute than {@link #key}: a 128-bit
+   * MurmurHash3 of the URL's characters. {@link HttpUrl} already holds its canonical string, so
+   * this doesn't allocate anything but the result.
+   */
+  static String fastKey(HttpUrl url) {
+    return Util.murmur3Hex(url.toString());
+  }
+
+  /** Returns the key that new responses for {@code url} are stored under. */
+  private String storeKey(HttpUrl url) {
+    return fastKeys ? fastKey(url) : key(url);
+  }
+
   @Nullable Response get(Request request) {
-    String key = key(request.url());
+    String key = storeKey(request.url());
     DiskLruCache.Snapshot snapshot;
     Entry entry;
     try {
       snapshot = cache.get(key);
+      if (snapshot == null && readMd5Keys) {
+        snapshot = cache.get(key(request.url()));
+      }
       if (snapshot == null) {
         return null;
       }
@@ -202,7 +263,23 @@ public final class Cache implements Closeable, Flushable {
     }
 
     try {
-      entry = new Entry(snapshot.getSource(ENTRY_METADATA));
+      BufferedSource metadata = Okio.buffer(snapshot.getSource(ENTRY_METADATA));
+      String url = metadata.readUtf8LineStrict();
+      String requestMethod = metadata.readUtf8LineStrict();
+      if (VariantIndex.MARKER.equals(requestMethod)) {
+        // This URL has several stored variants. Find the one this request selects.
+        String indexKey = snapshot.key();
+        VariantIndex index = new VariantIndex(url, metadata);
+        snapshot.close();
+        String variant = index.variantOf(request.headers());
+        if (!index.variants.contains(variant)) return null;
+        snapshot = cache.get(variantKey(indexKey, variant));
+        if (snapshot == null) return null;
+        metadata = Okio.buffer(snapshot.getSource(ENTRY_METADATA));
+        url = metadata.readUtf8LineStrict();
+        requestMethod = metadata.readUtf8LineStrict();
+      }
+      entry = new Entry(url, requestMethod, metadata);
     } catch (IOException e) {
       Util.closeQuietly(snapshot);
       return null;
@@ -243,10 +320,31 @@ public final class Cache implements Closeable, Flushable {
     Entry entry = new Entry(response);
     DiskLruCache.Editor editor = null;
     try {
-      editor = cache.edit(key(response.request().url()));
+      HttpUrl url = response.request().url();
+      String key = storeKey(url);
+      synchronized (indexLock(key)) {
+        Set<String> varyFields = maxVariantsPerUrl > 1
+            ? HttpHeaders.varyFields(response.headers())
+            : Collections.<String>emptySet();
+        if (!varyFields.isEmpty()) {
+          key = addVariant(key, entry.url, varyFields, entry.varyHeaders);
+          if (key == null) {
+            return null;
+          }
+        } else {
+          // This response replaces any variant index stored under the key, even one written when
+          // more variants per URL were allowed.
+          cache.removeDependents(key);
+        }
+        editor = cache.edit(key);
+      }
       if (editor == null) {
         return null;
       }
+      if (readMd5Keys) {
+        // Don't leave a stale copy under the old key.
+        cache.remove(key(url));
+      }
       entry.writeTo(editor);
       return new CacheRequestImpl(editor);
     } catch (IOException e) {
@@ -256,7 +354,87 @@ public final class Cache implements Closeable, Flushable {
   }
 
   void remove(Request request) throws IOException {
-    cache.remove(key(request.url()));
+    String key = storeKey(request.url());
+    synchronized (indexLock(key)) {
+      cache.remove(key); // Also removes the variants it indexes.
+    }
+    if (readMd5Keys) {
+      cache.remove(key(request.url()));
+    }
+  }
+
+  private Object indexLock(String key) {
+    return indexLocks[(key.hashCode() & 0x7fffffff) % indexLocks.length];
+  }
+
+  private static Object[] newLocks(int count) {
+    Object[] result = new Object[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = new Object();
+    }
+    return result;
+  }
+
+  private static String variantKey(String indexKey, String variant) {
+    return indexKey + "-" + variant;
+  }
+
+  /**
+   * Records a new variant in the index stored under {@code key}, replacing any response stored
+   * there. The least recently stored variants beyond {@link #maxVariantsPerUrl} are removed, as
+   * are all previous variants if the response varies on different fields than before. Returns the
+   * key to store the new variant under, or null if the index couldn't be written. Callers must
+   * hold the key's index lock.
+   */
+  private @Nullable String addVariant(
+      String key, String url, Set<String> varyFields, Headers varyHeaders) throws IOException {
+    List<String> fields = new ArrayList<>(varyFields.size());
+    for (String field : varyFields) {
+      fields.add(field.toLowerCase(Locale.US));
+    }
+    String variant = VariantIndex.variantOf(fields, varyHeaders);
+
+    List<String> variants = new ArrayList<>();
+    variants.add(variant);
+    VariantIndex previous = readVariantIndex(key);
+    if (previous != null) {
+      boolean sameFields = previous.varyFields.equals(fields);
+      for (String previousVariant : previous.variants) {
+        if (previousVariant.equals(variant)) continue;
+        if (sameFields && variants.size() < maxVariantsPerUrl) {
+          variants.add(previousVariant);
+        } else {
+          cache.remove(variantKey(key, previousVariant));
+        }
+      }
+    }
+
+    DiskLruCache.Editor editor = cache.edit(key);
+    if (editor == null) {
+      return null;
+    }
+    try {
+      new VariantIndex(url, fields, variants).writeTo(editor);
+      editor.commit();
+    } catch (IOException e) {
+      abortQuietly(editor);
+      return null;
+    }
+    return variantKey(key, variant);
+  }
+
+  /** Returns the variant index stored under {@code key}, or null if it holds a single response. */
+  private @Nullable VariantIndex readVariantIndex(String key) throws IOException {
+    DiskLruCache.Snapshot snapshot = cache.get(key);
+    if (snapshot == null) return null;
+    try {
+      BufferedSource metadata = Okio.buffer(snapshot.getSource(ENTRY_METADATA));
+      String url = metadata.readUtf8LineStrict();
+      String marker = metadata.readUtf8LineStrict();
+      return VariantIndex.MARKER.equals(marker) ? new VariantIndex(url, metadata) : null;
+    } finally {
+      snapshot.close();
+    }
   }
 
   void update(Response cached, Response network) {
@@ -339,7 +517,11 @@ public final class Cache implements Closeable, Flushable {
           DiskLruCache.Snapshot snapshot = delegate.next();
           try {
             BufferedSource metadata = Okio.buffer(snapshot.getSource(ENTRY_METADATA));
-            nextUrl = metadata.readUtf8LineStrict();
+            String url = metadata.readUtf8LineStrict();
+            if (VariantIndex.MARKER.equals(metadata.readUtf8LineStrict())) {
+              continue; // Each variant is returned on its own.
+            }
+            nextUrl = url;
             return true;
           } catch (IOException ignored) {
             // We couldn't read the metadata for this snapshot; possibly because the host filesystem
@@ -415,6 +597,14 @@ public final class Cache implements Closeable, Flushable {
     hitCount++;
   }
 
+  synchronized boolean startRevalidation(Response cached) {
+    return revalidatingKeys.add(((CacheResponseBody) cached.body()).snapshot.key());
+  }
+
+  synchronized void finishRevalidation(Response cached) {
+    revalidatingKeys.remove(((CacheResponseBody) cached.body()).snapshot.key());
+  }
+
   public synchronized int networkCount() {
     return networkCount;
   }
@@ -427,6 +617,88 @@ public final class Cache implements Closeable, Flushable {
     return requestCount;
   }
 
+  public static final class Builder {
+    final File directory;
+    final long maxSize;
+    FileSystem fileSystem = FileSystem.SYSTEM;
+    long mappedReadThreshold = -1L;
+    @Nullable EvictionPolicy evictionPolicy;
+    boolean fastKeys;
+    boolean readMd5Keys;
+    int maxVariantsPerUrl = 1;
+
+    public Builder(File directory, long maxSize) {
+      if (directory == null) throw new NullPointerException("directory == null");
+      if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0: " + maxSize);
+      this.directory = directory;
+      this.maxSize = maxSize;
+    }
+
+    Builder fileSystem(FileSystem fileSystem) {
+      if (fileSystem == null) throw new NullPointerException("fileSystem == null");
+      this.fileSystem = fileSystem;
+      return this;
+    }
+
+    /**
+     * Serve cached response bodies of at least {@code minimumSize} bytes by mapping their files
+     * into memory instead of streaming them. This saves a read system call and a copy per segment
+     * for large bodies like images and multi-megabyte JSON documents, but costs address space and
+     * a mapping setup per hit, so it is a poor fit for small bodies. Disabled by default.
+     *
+     * <p>Mappings are only released when they're garbage collected. Windows can't replace or evict
+     * files that are still mapped, so bodies are always streamed there.
+     */
+    public Builder memoryMappedReads(long minimumSize) {
+      if (minimumSize < 0) throw new IllegalArgumentException("minimumSize < 0: " + minimumSize);
+      this.mappedReadThreshold = minimumSize;
+      return this;
+    }
+
+    /**
+     * Chooses which responses to evict when the cache is full. By default the least recently used
+     * response is evicted, which lets one crawl over many URLs flush responses that are used
+     * repeatedly. See {@link EvictionPolicy} for built-in alternatives.
+     */
+    public Builder evictionPolicy(EvictionPolicy evictionPolicy) {
+      if (evictionPolicy == null) throw new NullPointerException("evictionPolicy == null");
+      this.evictionPolicy = evictionPolicy;
+      return this;
+    }
+
+    /**
+     * Store responses under a key derived with a fast non-cryptographic hash of the URL, rather
+     * than an MD5 of its UTF-8 bytes. This saves CPU on every cache lookup.
+     *
+     * <p>Responses cached with MD5 keys are not found with the new keys. Set {@code readMd5Keys} to
+     * also look responses up by their MD5 key, so an existing cache directory stays warm while it
+     * is migrated; such responses are replaced under the new key when they are next stored.
+     */
+    public Builder fastKeys(boolean readMd5Keys) {
+      this.fastKeys = true;
+      this.readMd5Keys = readMd5Keys;
+      return this;
+    }
+
+    /**
+     * Store up to {@code maxVariantsPerUrl} responses for each URL whose responses carry a {@code
+     * Vary} header, one for each distinct combination of the selecting request headers. By default
+     * only the most recent variant is stored, so clients that alternate between, say, two {@code
+     * Accept-Language} values keep replacing each other's cached response.
+     */
+    public Builder maxVariantsPerUrl(int maxVariantsPerUrl) {
+      if (maxVariantsPerUrl < 1) {
+        throw new IllegalArgumentException("maxVariantsPerUrl < 1: " + maxVariantsPerUrl);
+      }
+      this.maxVariantsPerUrl = maxVariantsPerUrl;
+      return this;
+    }
+
+    public Cache build() {
+      return new Cache(this);
+    }
+  }
+
   private final class CacheRequestImpl implements CacheRequest {
     private final DiskLruCache.Editor editor;
     private Sink cacheOut;
@@ -536,12 +808,14 @@ public final class Cache implements Closeable, Flushable {
      * contains the length of the local certificate chain. These certificates are also
      * base64-encoded and appear each on their own line. A length of -1 is used to encode a null
      * array. The last line is optional. If present, it contains the TLS version.
+     *
+     * <p>The caller reads the URL and request method lines to tell entries apart from {@linkplain
+     * VariantIndex variant indexes}, and passes them in along with the rest of {@code source}.
      */
-    Entry(Source in) throws IOException {
+    Entry(String url, String requestMethod, BufferedSource source) throws IOException {
       try {
-        BufferedSource source = Okio.buffer(in);
-        url = source.readUtf8LineStrict();
-        requestMethod = source.readUtf8LineStrict();
+        this.url = url;
+        this.requestMethod = requestMethod;
         Headers.Builder varyHeadersBuilder = new Headers.Builder();
         int varyRequestHeaderLineCount = readInt(source);
         for (int i = 0; i < varyRequestHeaderLineCount; i++) {
@@ -587,7 +861,7 @@ public final class Cache implements Closeable, Flushable {
           handshake = null;
         }
       } finally {
-        in.close();
+        source.close();
       }
     }
 
@@ -717,6 +991,96 @@ public final class Cache implements Closeable, Flushable {
     }
   }
 
+  /**
+   * Lists the variants stored for a URL whose responses vary by request headers. An index is
+   * stored in place of the URL's single entry, and each variant is stored as a regular entry under
+   * the index's key suffixed with a hash of the variant's selecting request headers. A typical
+   * index looks like this:
+   * <pre>{@code
+   *   https://google.com/foo
+   *   VARIANTS
+   *   2
+   *   accept-encoding
+   *   accept-language
+   *   2
+   *   5d41402abc4b2a76b9719d911017c592
+   *   7d793037a0760186574b0282f2f435e7
+   * }</pre>
+   * The first two lines are the URL and a marker in place of the request method. Next is the
+   * number of lowercase vary fields, followed by those fields. Last is the number of variants,
+   * followed by their hashes, most recently stored first. Indexes have an empty body.
+   */
+  private static final class VariantIndex {
+    static final String MARKER = "VARIANTS";
+
+    final String url;
+    final List<String> varyFields;
+    final List<String> variants;
+
+    VariantIndex(String url, List<String> varyFields, List<String> variants) {
+      this.url = url;
+      this.varyFields = varyFields;
+      this.variants = variants;
+    }
+
+    /** Reads an index from {@code source}, whose URL and marker lines were already consumed. */
+    VariantIndex(String url, BufferedSource source) throws IOException {
+      try {
+        this.url = url;
+        int varyFieldCount = readInt(source);
+        varyFields = new ArrayList<>(varyFieldCount);
+        for (int i = 0; i < varyFieldCount; i++) {
+          varyFields.add(source.readUtf8LineStrict());
+        }
+        int variantCount = readInt(source);
+        variants = new ArrayList<>(variantCount);
+        for (int i = 0; i < variantCount; i++) {
+          variants.add(source.readUtf8LineStrict());
+        }
+      } finally {
+        source.close();
+      }
+    }
+
+    /** Returns the hash of the variant that {@code requestHeaders} select. */
+    String variantOf(Headers requestHeaders) {
+      return variantOf(varyFields, requestHeaders);
+    }
+
+    static String variantOf(List<String> varyFields, Headers requestHeaders) {
+      StringBuilder result = new StringBuilder();
+      for (String field : varyFields) {
+        result.append(field).append('\n');
+        for (String value : requestHeaders.values(field)) {
+          result.append(' ').append(value).append('\n');
+        }
+      }
+      return Util.murmur3Hex(result.toString());
+    }
+
+    void writeTo(DiskLruCache.Editor editor) throws IOException {
+      BufferedSink sink = Okio.buffer(editor.newSink(ENTRY_METADATA));
+      sink.writeUtf8(url)
+          .writeByte('\n');
+      sink.writeUtf8(MARKER)
+          .writeByte('\n');
+      sink.writeDecimalLong(varyFields.size())
+          .writeByte('\n');
+      for (int i = 0, size = varyFields.size(); i < size; i++) {
+        sink.writeUtf8(varyFields.get(i))
+            .writeByte('\n');
+      }
+      sink.writeDecimalLong(variants.size())
+          .writeByte('\n');
+      for (int i = 0, size = variants.size(); i < size; i++) {
+        sink.writeUtf8(variants.get(i))
+            .writeByte('\n');
+      }
+      sink.close();
+      editor.newSink(ENTRY_BODY).close();
+    }
+  }
+
   static int readInt(BufferedSource source) throws IOException {
     try {
       long result = source.readDecimalLong();
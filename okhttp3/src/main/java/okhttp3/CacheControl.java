@@ -39,13 +39,15 @@ public final class CacheControl {
   private final boolean onlyIfCached;
   private final boolean noTransform;
   private final boolean immutable;
+  private final int staleWhileRevalidateSeconds;
+  private final int staleIfErrorSeconds;
 
   @Nullable String headerValue; // Lazily computed, null if absent.
 
   private CacheControl(boolean noCache, boolean noStore, int maxAgeSeconds, int sMaxAgeSeconds,
       boolean isPrivate, boolean isPublic, boolean mustRevalidate, int maxStaleSeconds,
       int minFreshSeconds, boolean onlyIfCached, boolean noTransform, boolean immutable,
-      @Nullable String headerValue) {
+      int staleWhileRevalidateSeconds, int staleIfErrorSeconds, @Nullable String headerValue) {
     this.noCache = noCache;
     this.noStore = noStore;
     this.maxAgeSeconds = maxAgeSeconds;
@@ -58,6 +60,8 @@ public final class CacheControl {
     this.onlyIfCached = onlyIfCached;
     this.noTransform = noTransform;
     this.immutable = immutable;
+    this.staleWhileRevalidateSeconds = staleWhileRevalidateSeconds;
+    this.staleIfErrorSeconds = staleIfErrorSeconds;
     this.headerValue = headerValue;
   }
 
@@ -74,6 +78,8 @@ public final class CacheControl {
     this.onlyIfCached = builder.onlyIfCached;
     this.noTransform = builder.noTransform;
     this.immutable = builder.immutable;
+    this.staleWhileRevalidateSeconds = -1;
+    this.staleIfErrorSeconds = builder.staleIfErrorSeconds;
   }
 
   /**
@@ -145,6 +151,24 @@ public final class CacheControl {
     return immutable;
   }
 
+  /**
+   * The duration past a response's freshness lifetime that it may be served stale while the cache
+   * revalidates it in the background. See <a href="https://tools.ietf.org/html/rfc5861">RFC
+   * 5861</a>.
+   */
+  public int staleWhileRevalidateSeconds() {
+    return staleWhileRevalidateSeconds;
+  }
+
+  /**
+   * The duration past a response's freshness lifetime that it may be served stale if revalidating
+   * it fails with an I/O error or a server error. See <a
+   * href="https://tools.ietf.org/html/rfc5861">RFC 5861</a>.
+   */
+  public int staleIfErrorSeconds() {
+    return staleIfErrorSeconds;
+  }
+
   /**
    * Returns the cache directives of {@code headers}. This honors both Cache-Control and Pragma
    * headers if they are present.
@@ -162,6 +186,8 @@ public final class CacheControl {
     boolean onlyIfCached = false;
     boolean noTransform = false;
     boolean immutable = false;
+    int staleWhileRevalidateSeconds = -1;
+    int staleIfErrorSeconds = -1;
 
     boolean canUseHeaderValue = true;
     String headerValue = null;
@@ -238,6 +264,10 @@ public final class CacheControl {
           noTransform = true;
         } else if ("immutable".equalsIgnoreCase(directive)) {
           immutable = true;
+        } else if ("stale-while-revalidate".equalsIgnoreCase(directive)) {
+          staleWhileRevalidateSeconds = HttpHeaders.parseSeconds(parameter, -1);
+        } else if ("stale-if-error".equalsIgnoreCase(directive)) {
+          staleIfErrorSeconds = HttpHeaders.parseSeconds(parameter, -1);
         }
       }
     }
@@ -247,7 +277,7 @@ public final class CacheControl {
     }
     return new CacheControl(noCache, noStore, maxAgeSeconds, sMaxAgeSeconds, isPrivate, isPublic,
         mustRevalidate, maxStaleSeconds, minFreshSeconds, onlyIfCached, noTransform, immutable,
-        headerValue);
+        staleWhileRevalidateSeconds, staleIfErrorSeconds, headerValue);
   }
 
   @Override public String toString() {
@@ -269,6 +299,12 @@ public final class CacheControl {
     if (onlyIfCached) result.append("only-if-cached, ");
     if (noTransform) result.append("no-transform, ");
     if (immutable) result.append("immutable, ");
+    if (staleWhileRevalidateSeconds != -1) {
+      result.append("stale-while-revalidate=").append(staleWhileRevalidateSeconds).append(", ");
+    }
+    if (staleIfErrorSeconds != -1) {
+      result.append("stale-if-error=").append(staleIfErrorSeconds).append(", ");
+    }
     if (result.length() == 0) return "";
     result.delete(result.length() - 2, result.length());
     return result.toString();
@@ -284,6 +320,7 @@ public final class CacheControl {
     boolean onlyIfCached;
     boolean noTransform;
     boolean immutable;
+    int staleIfErrorSeconds = -1;
 
     /** Don't accept an unvalidated cached response. */
     public Builder noCache() {
@@ -366,6 +403,22 @@ public final class CacheControl {
       return this;
     }
 
+    /**
+     * Accept a cached response that has exceeded its freshness lifetime by up to {@code
+     * staleIfError} if the network fails with an I/O error or a server error.
+     *
+     * @param staleIfError a non-negative integer. This is stored and transmitted with {@link
+     * TimeUnit#SECONDS} precision; finer precision will be lost.
+     */
+    public Builder staleIfError(int staleIfError, TimeUnit timeUnit) {
+      if (staleIfError < 0) throw new IllegalArgumentException("staleIfError < 0: " + staleIfError);
+      long staleIfErrorSecondsLong = timeUnit.toSeconds(staleIfError);
+      this.staleIfErrorSeconds = staleIfErrorSecondsLong > Integer.MAX_VALUE
+          ? Integer.MAX_VALUE
+          : (int) staleIfErrorSecondsLong;
+      return this;
+    }
+
     public CacheControl build() {
       return new CacheControl(this);
     }
@@ -20,8 +20,10 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLPeerUnverifiedException;
@@ -128,9 +130,23 @@ import static okhttp3.internal.Util.equal;
 public final class CertificatePinner {
   public static final CertificatePinner DEFAULT = new Builder().build();
 
+  /** The maximum number of verified peer certificate chains to remember. */
+  private static final int MAX_VERIFIED_CHAINS = 64;
+
   private final Set<Pin> pins;
   private final @Nullable CertificateChainCleaner certificateChainCleaner;
 
+  /**
+   * Peer certificate chains that satisfied this pinner, least recently used first. Pins and the
+   * chain cleaner are fixed for each instance, so a pinner with different pins starts empty.
+   */
+  private final Map<VerifiedChain, Boolean> verifiedChains =
+      new LinkedHashMap<VerifiedChain, Boolean>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<VerifiedChain, Boolean> eldest) {
+          return size() > MAX_VERIFIED_CHAINS;
+        }
+      };
+
   CertificatePinner(Set<Pin> pins, @Nullable CertificateChainCleaner certificateChainCleaner) {
     this.pins = pins;
     this.certificateChainCleaner = certificateChainCleaner;
@@ -162,6 +178,12 @@ public final class CertificatePinner {
     List<Pin> pins = findMatchingPins(hostname);
     if (pins.isEmpty()) return;
 
+    // Skip cleaning and hashing a chain that already satisfied the same pins.
+    VerifiedChain verifiedChain = new VerifiedChain(pins, peerCertificates);
+    synchronized (verifiedChains) {
+      if (verifiedChains.get(verifiedChain) != null) return;
+    }
+
     if (certificateChainCleaner != null) {
       peerCertificates = certificateChainCleaner.clean(peerCertificates, hostname);
     }
@@ -177,10 +199,16 @@ public final class CertificatePinner {
         Pin pin = pins.get(p);
         if (pin.hashAlgorithm.equals("sha256/")) {
           if (sha256 == null) sha256 = sha256(x509Certificate);
-          if (pin.hash.equals(sha256)) return; // Success!
+          if (pin.hash.equals(sha256)) {
+            verified(verifiedChain);
+            return; // Success!
+          }
         } else if (pin.hashAlgorithm.equals("sha1/")) {
           if (sha1 == null) sha1 = sha1(x509Certificate);
-          if (pin.hash.equals(sha1)) return; // Success!
+          if (pin.hash.equals(sha1)) {
+            verified(verifiedChain);
+            return; // Success!
+          }
         } else {
           throw new AssertionError("unsupported hashAlgorithm: " + pin.hashAlgorithm);
         }
@@ -204,6 +232,12 @@ public final class CertificatePinner {
     throw new SSLPeerUnverifiedException(message.toString());
   }
 
+  private void verified(VerifiedChain verifiedChain) {
+    synchronized (verifiedChains) {
+      verifiedChains.put(verifiedChain, Boolean.TRUE);
+    }
+  }
+
   /** @deprecated replaced with {@link #check(String, List)}. */
   public void check(String hostname, Certificate... peerCertificates)
       throws SSLPeerUnverifiedException {
@@ -316,6 +350,27 @@ public final class CertificatePinner {
     }
   }
 
+  /** A peer certificate chain as presented, and the pins it was checked against. */
+  static final class VerifiedChain {
+    final List<Pin> pins;
+    final List<Certificate> peerCertificates;
+
+    VerifiedChain(List<Pin> pins, List<Certificate> peerCertificates) {
+      this.pins = pins;
+      this.peerCertificates = new ArrayList<>(peerCertificates);
+    }
+
+    @Override public boolean equals(Object other) {
+      return other instanceof VerifiedChain
+          && pins.equals(((VerifiedChain) other).pins)
+          && peerCertificates.equals(((VerifiedChain) other).peerCertificates);
+    }
+
+    @Override public int hashCode() {
+      return 31 * pins.hashCode() + peerCertificates.hashCode();
+    }
+  }
+
   /** Builds a configured certificate pinner. */
   public static final class Builder {
     private final List<Pin> pins = new ArrayList<>();
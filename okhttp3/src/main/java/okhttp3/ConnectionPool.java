@@ -127,7 +127,8 @@ public final class ConnectionPool {
     assert (Thread.holdsLock(this));
     for (RealConnection connection : connections) {
       //todo:要拿到的连接与连接池中的连接 连接配置一致（dns/代理/域名等等），就可复用
-      if (connection.isEligible(address, route)) {
+      if (connection.isEligible(address, route)
+          || connection.isEligibleForPipelining(address, streamAllocation)) {
         streamAllocation.acquire(connection, true);
         return connection;
       }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3;
+
+import java.io.IOException;
+import java.util.zip.Inflater;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Source;
+
+/**
+ * Decodes response bodies that a server compressed with a content coding like {@code gzip} or
+ * {@code br}. The client advertises the encodings of its {@linkplain
+ * OkHttpClient.Builder#contentDecoders decoders} in the {@code Accept-Encoding} request header and
+ * decodes responses with a matching {@code Content-Encoding} as they are read.
+ *
+ * <p>Implement this interface to support other encodings, such as by adapting a third-party brotli
+ * or zstd decompressor.
+ */
+public interface ContentDecoder {
+  /** Decodes the {@code gzip} content coding. */
+  ContentDecoder GZIP = new ContentDecoder() {
+    @Override public String encoding() {
+      return "gzip";
+    }
+
+    @Override public Source decode(Source source) {
+      return new GzipSource(source);
+    }
+  };
+
+  /** Decodes the {@code deflate} content coding: a zlib stream as specified by RFC 1950. */
+  ContentDecoder DEFLATE = new ContentDecoder() {
+    @Override public String encoding() {
+      return "deflate";
+    }
+
+    @Override public Source decode(Source source) {
+      return new InflaterSource(source, new Inflater());
+    }
+  };
+
+  /**
+   * Returns the content coding token that this decodes, like {@code gzip}. This is advertised in
+   * {@code Accept-Encoding} request headers and matched case-insensitively against {@code
+   * Content-Encoding} response headers.
+   */
+  String encoding();
+
+  /** Returns a source that reads the decoded bytes of {@code source}. */
+  Source decode(Source source) throws IOException;
+}
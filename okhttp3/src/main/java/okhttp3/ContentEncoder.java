@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import okio.DeflaterSink;
+import okio.GzipSink;
+import okio.Sink;
+
+/**
+ * Compresses request bodies with a content coding like {@code gzip}. Bodies are encoded as they
+ * are written, so their compressed length isn't known in advance and they're sent with chunked
+ * transfer encoding on HTTP/1.1.
+ *
+ * <p>Request compression is opt-in: either {@linkplain RequestBody#compressed compress} a single
+ * request body, or configure a client to {@linkplain OkHttpClient.Builder#requestCompression
+ * compress} all of its request bodies. Only do this for servers known to accept the encoding.
+ */
+public interface ContentEncoder {
+  /** Encodes the {@code gzip} content coding. */
+  ContentEncoder GZIP = new ContentEncoder() {
+    @Override public String encoding() {
+      return "gzip";
+    }
+
+    @Override public Sink encode(Sink sink) {
+      return new GzipSink(sink);
+    }
+  };
+
+  /** Encodes the {@code deflate} content coding: a zlib stream as specified by RFC 1950. */
+  ContentEncoder DEFLATE = new ContentEncoder() {
+    @Override public String encoding() {
+      return "deflate";
+    }
+
+    @Override public Sink encode(Sink sink) {
+      return new DeflaterSink(sink, new Deflater());
+    }
+  };
+
+  /** Returns the content coding token that this encodes, like {@code gzip}. */
+  String encoding();
+
+  /**
+   * Returns a sink that writes the encoded bytes of its input to {@code sink}. Closing the returned
+   * sink must finish the encoding and close {@code sink}.
+   */
+  Sink encode(Sink sink) throws IOException;
+}
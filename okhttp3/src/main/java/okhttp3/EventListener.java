@@ -133,6 +133,21 @@ public abstract class EventListener {
   public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
   }
 
+  /**
+   * Invoked immediately after a TLS connection was established. {@code resumed} is true if the
+   * handshake resumed a previous TLS session rather than negotiating a new one, and {@code
+   * handshakeDurationNanos} is how long the handshake and certificate checks took. Resumption is
+   * inferred from the negotiated session and may be missed for TLS 1.3; see {@link
+   * TlsSessionCache}.
+   *
+   * <p>This method is invoked instead of {@link #secureConnectEnd(Call, Handshake)}. The default
+   * implementation delegates to that method.
+   */
+  public void secureConnectEnd(Call call, @Nullable Handshake handshake, boolean resumed,
+      long handshakeDurationNanos) {
+    secureConnectEnd(call, handshake);
+  }
+
   /**
    * Invoked immediately after a socket connection was attempted.
    *
@@ -220,6 +235,18 @@ public abstract class EventListener {
   public void requestBodyEnd(Call call, long byteCount) {
   }
 
+  /**
+   * Invoked immediately after sending a request body that was compressed with a {@link
+   * ContentEncoder}. {@code byteCount} is the number of compressed bytes sent and {@code
+   * uncompressedByteCount} is the number of bytes before compression.
+   *
+   * <p>This method is invoked instead of {@link #requestBodyEnd(Call, long)}. The default
+   * implementation delegates to that method.
+   */
+  public void requestBodyEnd(Call call, long byteCount, long uncompressedByteCount) {
+    requestBodyEnd(call, byteCount);
+  }
+
   /**
    * Invoked just prior to receiving response headers.
    *
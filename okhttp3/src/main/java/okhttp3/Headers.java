@@ -48,8 +48,22 @@ import okhttp3.internal.http.HttpDate;
  * <p>Instances of this class are immutable. Use {@link Builder} to create instances.
  */
 public final class Headers {
+  /** Header sets with at least this many fields are indexed on their first lookup. */
+  static final int INDEX_THRESHOLD = 16;
+
   private final String[] namesAndValues;
 
+  /**
+   * An open-addressing hash table from case-insensitive field name to the last value with that
+   * name, or null if it hasn't been built yet. Each slot is a pair of ints: the name's hash and
+   * one more than the name's index in {@link #namesAndValues}, or zero if the slot is empty.
+   *
+   * <p>Racing threads may each build this, but they build identical tables. The field is volatile
+   * so that a thread that sees the table also sees its contents, which are written before it is
+   * published.
+   */
+  private volatile int[] index;
+
   Headers(Builder builder) {
     this.namesAndValues = builder.namesAndValues.toArray(new String[builder.namesAndValues.size()]);
   }
@@ -60,7 +74,62 @@ public final class Headers {
 
   /** Returns the last value corresponding to the specified field, or null. */
   public @Nullable String get(String name) {
-    return get(namesAndValues, name);
+    if (namesAndValues.length < INDEX_THRESHOLD * 2) return get(namesAndValues, name);
+
+    int[] index = this.index;
+    if (index == null) {
+      index = buildIndex(namesAndValues);
+      this.index = index;
+    }
+    int hash = caseInsensitiveHash(name);
+    int mask = index.length / 2 - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int nameIndex = index[slot * 2 + 1] - 1;
+      if (nameIndex == -1) return null;
+      if (index[slot * 2] == hash && name.equalsIgnoreCase(namesAndValues[nameIndex])) {
+        return namesAndValues[nameIndex + 1];
+      }
+    }
+  }
+
+  private static int[] buildIndex(String[] namesAndValues) {
+    // Size the table so it is at most half full.
+    int capacity = Integer.highestOneBit(namesAndValues.length - 1) << 1;
+    int mask = capacity - 1;
+    int[] index = new int[capacity * 2];
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      String name = namesAndValues[i];
+      int hash = caseInsensitiveHash(name);
+      int slot = hash & mask;
+      while (true) {
+        int nameIndex = index[slot * 2 + 1] - 1;
+        if (nameIndex == -1
+            || (index[slot * 2] == hash && name.equalsIgnoreCase(namesAndValues[nameIndex]))) {
+          // Later fields replace earlier ones so that lookups return the last value.
+          index[slot * 2] = hash;
+          index[slot * 2 + 1] = i + 1;
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+    return index;
+  }
+
+  /** Returns a hash of {@code name} that is consistent with {@link String#equalsIgnoreCase}. */
+  private static int caseInsensitiveHash(String name) {
+    int hash = 0;
+    for (int i = 0, length = name.length(); i < length; i++) {
+      char c = name.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      } else if (c >= 0x80) {
+        c = Character.toLowerCase(Character.toUpperCase(c));
+      }
+      hash = 31 * hash + c;
+    }
+    // Spread the high bits down since the table is indexed by the low bits.
+    return hash ^ (hash >>> 16);
   }
 
   /**
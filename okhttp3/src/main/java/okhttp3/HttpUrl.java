@@ -303,52 +303,87 @@ public final class HttpUrl {
   /** Either "http" or "https". */
   final String scheme;
 
-  /** Decoded username. */
-  private final String username;
-
-  /** Decoded password. */
-  private final String password;
-
   /** Canonical hostname. */
   final String host;
 
   /** Either 80, 443 or a user-specified port. In range [1..65535]. */
   final int port;
 
+  /** Canonical URL. */
+  private final String url;
+
+  // Components are kept encoded in the canonical URL and only decoded when they're requested.
+  // These offsets and sizes locate each component in the URL without scanning it again.
+
+  private final boolean hasUsername;
+  private final boolean hasPassword;
+
+  /** Offset of the path's leading '/' in {@link #url}. */
+  private final int pathStart;
+
+  /** Offset of the end of the path in {@link #url}. */
+  private final int pathEnd;
+
+  /** Number of path segments. This is always at least one. */
+  private final int pathSize;
+
+  /** Offset of the first character of the query in {@link #url}, or -1 for no query. */
+  private final int queryStart;
+
+  /** Offset of the end of the query in {@link #url}. */
+  private final int queryEnd;
+
+  /** Number of query parameters. */
+  private final int querySize;
+
+  /** Offset of the first character of the fragment in {@link #url}, or -1 for no fragment. */
+  private final int fragmentStart;
+
+  // Decoded components, or null if they haven't been decoded yet. Racing threads may each decode a
+  // component, but they'll compute equal values.
+
+  private String username;
+  private String password;
+
   /**
-   * A list of canonical path segments. This list always contains at least one element, which may be
-   * the empty string. Each segment is formatted with a leading '/', so if path segments were ["a",
-   * "b", ""], then the encoded path would be "/a/b/".
+   * A list of decoded path segments. This list always contains at least one element, which may be
+   * the empty string.
    */
-  private final List<String> pathSegments;
+  private volatile List<String> pathSegments;
 
   /**
-   * Alternating, decoded query names and values, or null for no query. Names may be empty or
-   * non-empty, but never null. Values are null if the name has no corresponding '=' separator, or
-   * empty, or non-empty.
+   * Alternating, decoded query names and values. Names may be empty or non-empty, but never null.
+   * Values are null if the name has no corresponding '=' separator, or empty, or non-empty.
    */
-  private final @Nullable List<String> queryNamesAndValues;
+  private volatile List<String> queryNamesAndValues;
 
-  /** Decoded fragment. */
-  private final @Nullable String fragment;
-
-  /** Canonical URL. */
-  private final String url;
+  private String fragment;
 
   HttpUrl(Builder builder) {
     this.scheme = builder.scheme;
-    this.username = percentDecode(builder.encodedUsername, false);
-    this.password = percentDecode(builder.encodedPassword, false);
     this.host = builder.host;
     this.port = builder.effectivePort();
-    this.pathSegments = percentDecode(builder.encodedPathSegments, false);
-    this.queryNamesAndValues = builder.encodedQueryNamesAndValues != null
-        ? percentDecode(builder.encodedQueryNamesAndValues, true)
-        : null;
-    this.fragment = builder.encodedFragment != null
-        ? percentDecode(builder.encodedFragment, false)
-        : null;
     this.url = builder.toString();
+
+    // Encoded usernames, passwords, path segments, and queries never contain the delimiters that
+    // follow them, so the first delimiter after each component's start is where it ends.
+    this.hasUsername = !builder.encodedUsername.isEmpty();
+    this.hasPassword = !builder.encodedPassword.isEmpty();
+    this.pathStart = url.indexOf('/', scheme.length() + 3); // "://".length() == 3.
+    this.pathSize = builder.encodedPathSegments.size();
+    this.fragmentStart = builder.encodedFragment != null ? url.indexOf('#', pathStart) + 1 : -1;
+    int fragmentDelimiter = fragmentStart != -1 ? fragmentStart - 1 : url.length();
+    if (builder.encodedQueryNamesAndValues != null) {
+      this.queryStart = url.indexOf('?', pathStart) + 1;
+      this.queryEnd = fragmentDelimiter;
+      this.querySize = builder.encodedQueryNamesAndValues.size() / 2;
+      this.pathEnd = queryStart - 1;
+    } else {
+      this.queryStart = -1;
+      this.queryEnd = -1;
+      this.querySize = 0;
+      this.pathEnd = fragmentDelimiter;
+    }
   }
 
   /** Returns this URL as a {@link URL java.net.URL}. */
@@ -409,7 +444,7 @@ public final class HttpUrl {
    * </table>
    */
   public String encodedUsername() {
-    if (username.isEmpty()) return "";
+    if (!hasUsername) return "";
     int usernameStart = scheme.length() + 3; // "://".length() == 3.
     int usernameEnd = delimiterOffset(url, usernameStart, url.length(), ":@");
     return url.substring(usernameStart, usernameEnd);
@@ -427,7 +462,12 @@ public final class HttpUrl {
    * </table>
    */
   public String username() {
-    return username;
+    String result = username;
+    if (result == null) {
+      result = percentDecode(encodedUsername(), false);
+      username = result;
+    }
+    return result;
   }
 
   /**
@@ -442,7 +482,7 @@ public final class HttpUrl {
    * </table>
    */
   public String encodedPassword() {
-    if (password.isEmpty()) return "";
+    if (!hasPassword) return "";
     int passwordStart = url.indexOf(':', scheme.length() + 3) + 1;
     int passwordEnd = url.indexOf('@');
     return url.substring(passwordStart, passwordEnd);
@@ -460,7 +500,12 @@ public final class HttpUrl {
    * </table>
    */
   public String password() {
-    return password;
+    String result = password;
+    if (result == null) {
+      result = percentDecode(encodedPassword(), false);
+      password = result;
+    }
+    return result;
   }
 
   /**
@@ -528,7 +573,7 @@ public final class HttpUrl {
    * </table>
    */
   public int pathSize() {
-    return pathSegments.size();
+    return pathSize;
   }
 
   /**
@@ -543,8 +588,6 @@ public final class HttpUrl {
    * </table>
    */
   public String encodedPath() {
-    int pathStart = url.indexOf('/', scheme.length() + 3); // "://".length() == 3.
-    int pathEnd = delimiterOffset(url, pathStart, url.length(), "?#");
     return url.substring(pathStart, pathEnd);
   }
 
@@ -567,9 +610,7 @@ public final class HttpUrl {
    * </table>
    */
   public List<String> encodedPathSegments() {
-    int pathStart = url.indexOf('/', scheme.length() + 3);
-    int pathEnd = delimiterOffset(url, pathStart, url.length(), "?#");
-    List<String> result = new ArrayList<>();
+    List<String> result = new ArrayList<>(pathSize);
     for (int i = pathStart; i < pathEnd; ) {
       i++; // Skip the '/'.
       int segmentEnd = delimiterOffset(url, i, pathEnd, '/');
@@ -591,7 +632,12 @@ public final class HttpUrl {
    * </table>
    */
   public List<String> pathSegments() {
-    return pathSegments;
+    List<String> result = pathSegments;
+    if (result == null) {
+      result = percentDecode(encodedPathSegments(), false);
+      pathSegments = result;
+    }
+    return result;
   }
 
   /**
@@ -610,9 +656,7 @@ public final class HttpUrl {
    * </table>
    */
   public @Nullable String encodedQuery() {
-    if (queryNamesAndValues == null) return null; // No query.
-    int queryStart = url.indexOf('?') + 1;
-    int queryEnd = delimiterOffset(url, queryStart, url.length(), '#');
+    if (queryStart == -1) return null; // No query.
     return url.substring(queryStart, queryEnd);
   }
 
@@ -670,9 +714,9 @@ public final class HttpUrl {
    * </table>
    */
   public @Nullable String query() {
-    if (queryNamesAndValues == null) return null; // No query.
+    if (queryStart == -1) return null; // No query.
     StringBuilder result = new StringBuilder();
-    namesAndValuesToQueryString(result, queryNamesAndValues);
+    namesAndValuesToQueryString(result, queryNamesAndValues());
     return result.toString();
   }
 
@@ -691,7 +735,7 @@ public final class HttpUrl {
    * </table>
    */
   public int querySize() {
-    return queryNamesAndValues != null ? queryNamesAndValues.size() / 2 : 0;
+    return querySize;
   }
 
   /**
@@ -708,7 +752,8 @@ public final class HttpUrl {
    * </table>
    */
   public @Nullable String queryParameter(String name) {
-    if (queryNamesAndValues == null) return null;
+    if (queryStart == -1) return null;
+    List<String> queryNamesAndValues = queryNamesAndValues();
     for (int i = 0, size = queryNamesAndValues.size(); i < size; i += 2) {
       if (name.equals(queryNamesAndValues.get(i))) {
         return queryNamesAndValues.get(i + 1);
@@ -731,7 +776,8 @@ public final class HttpUrl {
    * </table>
    */
   public Set<String> queryParameterNames() {
-    if (queryNamesAndValues == null) return Collections.emptySet();
+    if (queryStart == -1) return Collections.emptySet();
+    List<String> queryNamesAndValues = queryNamesAndValues();
     Set<String> result = new LinkedHashSet<>();
     for (int i = 0, size = queryNamesAndValues.size(); i < size; i += 2) {
       result.add(queryNamesAndValues.get(i));
@@ -758,7 +804,8 @@ public final class HttpUrl {
    * </table>
    */
   public List<String> queryParameterValues(String name) {
-    if (queryNamesAndValues == null) return Collections.emptyList();
+    if (queryStart == -1) return Collections.emptyList();
+    List<String> queryNamesAndValues = queryNamesAndValues();
     List<String> result = new ArrayList<>();
     for (int i = 0, size = queryNamesAndValues.size(); i < size; i += 2) {
       if (name.equals(queryNamesAndValues.get(i))) {
@@ -786,8 +833,8 @@ public final class HttpUrl {
    * </table>
    */
   public String queryParameterName(int index) {
-    if (queryNamesAndValues == null) throw new IndexOutOfBoundsException();
-    return queryNamesAndValues.get(index * 2);
+    if (queryStart == -1) throw new IndexOutOfBoundsException();
+    return queryNamesAndValues().get(index * 2);
   }
 
   /**
@@ -808,8 +855,18 @@ public final class HttpUrl {
    * </table>
    */
   public String queryParameterValue(int index) {
-    if (queryNamesAndValues == null) throw new IndexOutOfBoundsException();
-    return queryNamesAndValues.get(index * 2 + 1);
+    if (queryStart == -1) throw new IndexOutOfBoundsException();
+    return queryNamesAndValues().get(index * 2 + 1);
+  }
+
+  /** Returns the decoded query names and values. Only call this if this URL has a query. */
+  private List<String> queryNamesAndValues() {
+    List<String> result = queryNamesAndValues;
+    if (result == null) {
+      result = percentDecode(queryStringToNamesAndValues(encodedQuery()), true);
+      queryNamesAndValues = result;
+    }
+    return result;
   }
 
   /**
@@ -825,8 +882,7 @@ public final class HttpUrl {
    * </table>
    */
   public @Nullable String encodedFragment() {
-    if (fragment == null) return null;
-    int fragmentStart = url.indexOf('#') + 1;
+    if (fragmentStart == -1) return null;
     return url.substring(fragmentStart);
   }
 
@@ -843,7 +899,13 @@ public final class HttpUrl {
    * </table>
    */
   public @Nullable String fragment() {
-    return fragment;
+    if (fragmentStart == -1) return null;
+    String result = fragment;
+    if (result == null) {
+      result = percentDecode(url, fragmentStart, url.length(), false);
+      fragment = result;
+    }
+    return result;
   }
 
   /**
@@ -17,8 +17,6 @@ package okhttp3;
 
 import java.nio.charset.Charset;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 /**
@@ -26,11 +24,14 @@ import javax.annotation.Nullable;
  * the content type of an HTTP request or response body.
  */
 public final class MediaType {
-  private static final String TOKEN = "([a-zA-Z0-9-!#$%&'*+.^_`{|}~]+)";
-  private static final String QUOTED = "\"([^\"]*)\"";
-  private static final Pattern TYPE_SUBTYPE = Pattern.compile(TOKEN + "/" + TOKEN);
-  private static final Pattern PARAMETER = Pattern.compile(
-      ";\\s*(?:" + TOKEN + "=(?:" + TOKEN + "|" + QUOTED + "))?");
+  /**
+   * Recently parsed media types, indexed by the low bits of their string's hash code. Instances
+   * are immutable so unsynchronized reads and writes are safe; a racing write just loses an entry.
+   */
+  private static final MediaType[] CACHE = new MediaType[64];
+
+  /** Strings longer than this aren't cached so the cache can't pin large strings. */
+  private static final int MAX_CACHED_LENGTH = 128;
 
   private final String mediaType;
   private final String type;
@@ -49,29 +50,62 @@ public final class MediaType {
    * type.
    */
   public static @Nullable MediaType parse(String string) {
-    Matcher typeSubtype = TYPE_SUBTYPE.matcher(string);
-    if (!typeSubtype.lookingAt()) return null;
-    String type = typeSubtype.group(1).toLowerCase(Locale.US);
-    String subtype = typeSubtype.group(2).toLowerCase(Locale.US);
+    int slot = string.hashCode() & (CACHE.length - 1);
+    MediaType cached = CACHE[slot];
+    if (cached != null && cached.mediaType.equals(string)) return cached;
+
+    MediaType result = parseUncached(string);
+    if (result != null && string.length() <= MAX_CACHED_LENGTH) {
+      CACHE[slot] = result;
+    }
+    return result;
+  }
+
+  private static @Nullable MediaType parseUncached(String string) {
+    int length = string.length();
+    int typeEnd = skipToken(string, 0, length);
+    if (typeEnd == 0 || typeEnd == length || string.charAt(typeEnd) != '/') return null;
+    int subtypeEnd = skipToken(string, typeEnd + 1, length);
+    if (subtypeEnd == typeEnd + 1) return null;
+    String type = string.substring(0, typeEnd).toLowerCase(Locale.US);
+    String subtype = string.substring(typeEnd + 1, subtypeEnd).toLowerCase(Locale.US);
 
     String charset = null;
-    Matcher parameter = PARAMETER.matcher(string);
-    for (int s = typeSubtype.end(); s < string.length(); s = parameter.end()) {
-      parameter.region(s, string.length());
-      if (!parameter.lookingAt()) return null; // This is not a well-formed media type.
+    for (int pos = subtypeEnd; pos < length; ) {
+      // Each parameter is ';', optional whitespace, and an optional name=value pair.
+      if (string.charAt(pos) != ';') return null; // This is not a well-formed media type.
+      pos = skipWhitespace(string, pos + 1, length);
+
+      int nameEnd = skipToken(string, pos, length);
+      if (nameEnd == pos || nameEnd == length || string.charAt(nameEnd) != '=') continue;
+
+      int valueStart = nameEnd + 1;
+      int valueEnd = skipToken(string, valueStart, length);
+      boolean quoted = false;
+      if (valueEnd == valueStart) {
+        if (valueStart == length || string.charAt(valueStart) != '"') continue;
+        int closeQuote = string.indexOf('"', valueStart + 1);
+        if (closeQuote == -1) continue;
+        quoted = true;
+        valueEnd = closeQuote + 1;
+      }
+      int nameStart = pos;
+      pos = valueEnd;
 
-      String name = parameter.group(1);
-      if (name == null || !name.equalsIgnoreCase("charset")) continue;
+      if (nameEnd - nameStart != 7 || !string.regionMatches(true, nameStart, "charset", 0, 7)) {
+        continue;
+      }
       String charsetParameter;
-      String token = parameter.group(2);
-      if (token != null) {
+      if (quoted) {
+        // Value is "double-quoted". That's valid; strip the quotes.
+        charsetParameter = string.substring(valueStart + 1, valueEnd - 1);
+      } else if (valueEnd - valueStart > 2
+          && string.charAt(valueStart) == '\''
+          && string.charAt(valueEnd - 1) == '\'') {
         // If the token is 'single-quoted' it's invalid! But we're lenient and strip the quotes.
-        charsetParameter = (token.startsWith("'") && token.endsWith("'") && token.length() > 2)
-            ? token.substring(1, token.length() - 1)
-            : token;
+        charsetParameter = string.substring(valueStart + 1, valueEnd - 1);
       } else {
-        // Value is "double-quoted". That's valid and our regex group already strips the quotes.
-        charsetParameter = parameter.group(3);
+        charsetParameter = string.substring(valueStart, valueEnd);
       }
       if (charset != null && !charsetParameter.equalsIgnoreCase(charset)) {
         return null; // Multiple different charsets!
@@ -82,6 +116,34 @@ public final class MediaType {
     return new MediaType(string, type, subtype, charset);
   }
 
+  /** Returns the index of the first character in {@code [pos..limit)} that isn't a token char. */
+  private static int skipToken(String string, int pos, int limit) {
+    for (; pos < limit; pos++) {
+      char c = string.charAt(pos);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) continue;
+      switch (c) {
+        case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+':
+        case '-': case '.': case '^': case '_': case '`': case '{': case '|': case '}': case '~':
+          continue;
+        default:
+          return pos;
+      }
+    }
+    return limit;
+  }
+
+  private static int skipWhitespace(String string, int pos, int limit) {
+    for (; pos < limit; pos++) {
+      switch (string.charAt(pos)) {
+        case ' ': case '\t': case '\n': case '\u000b': case '\f': case '\r':
+          continue;
+        default:
+          return pos;
+      }
+    }
+    return limit;
+  }
+
   /**
    * Returns the high-level media type, such as "text", "image", "audio", "video", or
    * "application".
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import okhttp3.internal.Util;
+import okhttp3.internal.publicsuffix.PublicSuffixDatabase;
+
+import static okhttp3.internal.Util.verifyAsIpAddress;
+
+/**
+ * A cookie jar that holds cookies in memory. It is safe for concurrent use and is suitable for
+ * clients that talk to many sites.
+ *
+ * <p>Cookies are indexed by their registrable domain, like {@code example.com} for a cookie on
+ * {@code www.example.com}, so loading the cookies for a request only considers the cookies of that
+ * request's site. Each site may hold a limited number of cookies; when a site exceeds it the oldest
+ * cookies are evicted. Expired cookies are never returned and are removed by a background thread.
+ *
+ * <p>As specified by <a href="https://tools.ietf.org/html/rfc6265#section-5.3">RFC 6265</a>,
+ * cookies whose domain is a public suffix or an IP address only match that exact host.
+ */
+public final class MemoryCookieJar implements CookieJar {
+  /**
+   * Background threads are used to remove expired cookies. There will be at most a single thread
+   * running per cookie jar, and only while it holds persistent cookies.
+   */
+  private static final Executor executor = new ThreadPoolExecutor(0 /* corePoolSize */,
+      Integer.MAX_VALUE /* maximumPoolSize */, 60L /* keepAliveTime */, TimeUnit.SECONDS,
+      new SynchronousQueue<Runnable>(), Util.threadFactory("OkHttp MemoryCookieJar", true));
+
+  /**
+   * Sweep for expired cookies no more often than this, and at least this often, so that cookies
+   * saved while the sweeper sleeps are removed promptly too.
+   */
+  private static final long MINIMUM_SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final long MAXIMUM_SWEEP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** The number of hosts whose registrable domain is remembered. */
+  private static final int MAX_CACHED_HOSTS = 1024;
+
+  private final int maxCookiesPerDomain;
+  private final ConcurrentHashMap<String, Domain> domains = new ConcurrentHashMap<>();
+
+  /** Memoizes the public suffix lookups of recently seen hosts. */
+  private final ConcurrentHashMap<String, String> hostToDomain = new ConcurrentHashMap<>();
+
+  private final Runnable cleanupRunnable = new Runnable() {
+    @Override public void run() {
+      while (true) {
+        long waitMillis = cleanup(System.currentTimeMillis());
+        if (waitMillis == -1L) return;
+        synchronized (MemoryCookieJar.this) {
+          try {
+            MemoryCookieJar.this.wait(waitMillis);
+          } catch (InterruptedException ignored) {
+          }
+        }
+      }
+    }
+  };
+
+  // Guarded by this.
+  private boolean cleanupRunning;
+  private boolean persistentCookieSaved;
+
+  /** Create a cookie jar that holds up to 180 cookies for each registrable domain. */
+  public MemoryCookieJar() {
+    this(180);
+  }
+
+  public MemoryCookieJar(int maxCookiesPerDomain) {
+    if (maxCookiesPerDomain <= 0) {
+      throw new IllegalArgumentException("maxCookiesPerDomain <= 0: " + maxCookiesPerDomain);
+    }
+    this.maxCookiesPerDomain = maxCookiesPerDomain;
+  }
+
+  @Override public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+    long now = System.currentTimeMillis();
+    boolean persistent = false;
+    for (int i = 0, size = cookies.size(); i < size; i++) {
+      Cookie cookie = cookies.get(i);
+      String key = registrableDomain(cookie.domain());
+      while (true) {
+        Domain domain = domains.get(key);
+        if (domain == null) {
+          domain = new Domain(key);
+          Domain existing = domains.putIfAbsent(key, domain);
+          if (existing != null) domain = existing;
+        }
+        if (domain.save(cookie, now)) break;
+      }
+      persistent |= cookie.persistent() && cookie.expiresAt() > now;
+    }
+
+    if (persistent) {
+      synchronized (this) {
+        persistentCookieSaved = true;
+        if (!cleanupRunning) {
+          cleanupRunning = true;
+          executor.execute(cleanupRunnable);
+        }
+      }
+    }
+  }
+
+  @Override public List<Cookie> loadForRequest(HttpUrl url) {
+    Domain domain = domains.get(registrableDomain(url.host()));
+    if (domain == null) return Collections.emptyList();
+    return domain.load(url, System.currentTimeMillis());
+  }
+
+  /** Returns the number of cookies in this jar, including any that have expired. */
+  public int size() {
+    int result = 0;
+    for (Domain domain : domains.values()) {
+      result += domain.size();
+    }
+    return result;
+  }
+
+  /** Removes all cookies from this jar. */
+  public void evictAll() {
+    for (Domain domain : domains.values()) {
+      domain.evictAll();
+    }
+  }
+
+  /**
+   * Removes expired cookies. Returns the duration in milliseconds to sleep until the next sweep, or
+   * -1 if no persistent cookies remain.
+   */
+  long cleanup(long now) {
+    synchronized (this) {
+      persistentCookieSaved = false;
+    }
+
+    long nextExpiresAt = Long.MAX_VALUE;
+    for (Domain domain : domains.values()) {
+      nextExpiresAt = Math.min(nextExpiresAt, domain.evictExpired(now));
+    }
+
+    synchronized (this) {
+      // Keep running if a persistent cookie was saved while we swept.
+      if (nextExpiresAt == Long.MAX_VALUE && !persistentCookieSaved) {
+        cleanupRunning = false;
+        return -1L;
+      }
+    }
+    long waitMillis = Math.min(nextExpiresAt - now, MAXIMUM_SWEEP_INTERVAL_MILLIS);
+    return Math.max(waitMillis, MINIMUM_SWEEP_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Returns the registrable domain of {@code host}, or {@code host} itself if it is an IP address
+   * or a public suffix.
+   */
+  private String registrableDomain(String host) {
+    String result = hostToDomain.get(host);
+    if (result != null) return result;
+
+    result = verifyAsIpAddress(host)
+        ? null
+        : PublicSuffixDatabase.get().getEffectiveTldPlusOne(host);
+    if (result == null) result = host;
+
+    if (hostToDomain.size() >= MAX_CACHED_HOSTS) hostToDomain.clear();
+    hostToDomain.put(host, result);
+    return result;
+  }
+
+  /** The cookies of a registrable domain, oldest first. */
+  private final class Domain {
+    final String key;
+
+    // All mutable state is guarded by this.
+    private final List<Cookie> cookies = new ArrayList<>();
+
+    /** True once this has been emptied and removed from the jar. */
+    private boolean removed;
+
+    Domain(String key) {
+      this.key = key;
+    }
+
+    /**
+     * Saves {@code cookie}, replacing any with the same name, domain, and path. Returns false if
+     * this domain was removed from the jar and the caller must save to its replacement.
+     */
+    synchronized boolean save(Cookie cookie, long now) {
+      if (removed) return false;
+
+      for (Iterator<Cookie> i = cookies.iterator(); i.hasNext(); ) {
+        Cookie existing = i.next();
+        if (existing.name().equals(cookie.name())
+            && existing.domain().equals(cookie.domain())
+            && existing.path().equals(cookie.path())) {
+          i.remove();
+          break;
+        }
+      }
+
+      // An expired cookie deletes the cookie it replaces.
+      if (cookie.expiresAt() > now) {
+        cookies.add(cookie);
+      }
+
+      if (cookies.size() > maxCookiesPerDomain) {
+        evictExpired(now);
+        while (cookies.size() > maxCookiesPerDomain) {
+          cookies.remove(0);
+        }
+      }
+
+      removeIfEmpty();
+      return true;
+    }
+
+    synchronized List<Cookie> load(HttpUrl url, long now) {
+      List<Cookie> result = null;
+      for (Iterator<Cookie> i = cookies.iterator(); i.hasNext(); ) {
+        Cookie cookie = i.next();
+        if (cookie.expiresAt() <= now) {
+          i.remove();
+        } else if (cookie.matches(url)) {
+          if (result == null) result = new ArrayList<>();
+          result.add(cookie);
+        }
+      }
+      removeIfEmpty();
+      return result != null ? result : Collections.<Cookie>emptyList();
+    }
+
+    /**
+     * Removes expired cookies and returns the time that the next persistent cookie expires, or
+     * {@code Long.MAX_VALUE} if there are no persistent cookies.
+     */
+    synchronized long evictExpired(long now) {
+      long nextExpiresAt = Long.MAX_VALUE;
+      for (Iterator<Cookie> i = cookies.iterator(); i.hasNext(); ) {
+        Cookie cookie = i.next();
+        if (cookie.expiresAt() <= now) {
+          i.remove();
+        } else if (cookie.persistent()) {
+          nextExpiresAt = Math.min(nextExpiresAt, cookie.expiresAt());
+        }
+      }
+      removeIfEmpty();
+      return nextExpiresAt;
+    }
+
+    synchronized int size() {
+      return cookies.size();
+    }
+
+    synchronized void evictAll() {
+      cookies.clear();
+      removeIfEmpty();
+    }
+
+    private void removeIfEmpty() {
+      assert (Thread.holdsLock(this));
+      if (cookies.isEmpty() && !removed) {
+        removed = true;
+        domains.remove(key, this);
+      }
+    }
+  }
+}
@@ -25,15 +25,20 @@ import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.net.SocketFactory;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -46,6 +51,7 @@ import okhttp3.internal.cache.InternalCache;
 import okhttp3.internal.connection.RealConnection;
 import okhttp3.internal.connection.RouteDatabase;
 import okhttp3.internal.connection.StreamAllocation;
+import okhttp3.internal.http.DefaultHeaders;
 import okhttp3.internal.platform.Platform;
 import okhttp3.internal.tls.CertificateChainCleaner;
 import okhttp3.internal.tls.OkHostnameVerifier;
@@ -131,6 +137,9 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
     static final List<ConnectionSpec> DEFAULT_CONNECTION_SPECS = Util.immutableList(
             ConnectionSpec.MODERN_TLS, ConnectionSpec.CLEARTEXT);
 
+    static final List<ContentDecoder> DEFAULT_CONTENT_DECODERS = Util.immutableList(
+            ContentDecoder.GZIP);
+
     static {
         Internal.instance = new Internal() {
             @Override
@@ -207,6 +216,21 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
             public Call newWebSocketCall(OkHttpClient client, Request originalRequest) {
                 return RealCall.newRealCall(client, originalRequest, true);
             }
+
+            @Override
+            public DefaultHeaders defaultHeaders(OkHttpClient client) {
+                return client.defaultHeaders;
+            }
+
+            @Override
+            public boolean sessionEstablished(@Nullable TlsSessionCache cache, Address address,
+                    ConnectionSpec connectionSpec, SSLSession session,
+                    long handshakeStartMillis) {
+                return cache != null
+                        ? cache.sessionEstablished(
+                                address, connectionSpec, session, handshakeStartMillis)
+                        : TlsSessionCache.isResumed(null, session, handshakeStartMillis);
+            }
         };
     }
 
@@ -234,6 +258,7 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
     final Authenticator proxyAuthenticator;
     final Authenticator authenticator;
     final ConnectionPool connectionPool;
+    final @Nullable TlsSessionCache tlsSessionCache;
     final Dns dns;
     final boolean followSslRedirects;
     final boolean followRedirects;
@@ -242,6 +267,19 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
     final int readTimeout;
     final int writeTimeout;
     final int pingInterval;
+    final boolean webSocketCompression;
+    final boolean webSocketContextTakeover;
+    final long webSocketMaxQueueSize;
+    final boolean webSocketCloseOnOverflow;
+    final long webSocketMaxMessageSize;
+    final boolean webSocketStreamBinaryMessages;
+    final @Nullable ScheduledExecutorService webSocketScheduler;
+    final List<String> pipelinedHosts;
+    final int maxPipelinedRequests;
+    final DefaultHeaders defaultHeaders;
+    final List<ContentDecoder> contentDecoders;
+    final @Nullable ContentEncoder requestEncoder;
+    final long requestCompressionMinimumSize;
 
     public OkHttpClient() {
         this(new Builder());
@@ -281,6 +319,7 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
         this.proxyAuthenticator = builder.proxyAuthenticator;
         this.authenticator = builder.authenticator;
         this.connectionPool = builder.connectionPool;
+        this.tlsSessionCache = builder.tlsSessionCache;
         this.dns = builder.dns;
         this.followSslRedirects = builder.followSslRedirects;
         this.followRedirects = builder.followRedirects;
@@ -289,6 +328,22 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
         this.readTimeout = builder.readTimeout;
         this.writeTimeout = builder.writeTimeout;
         this.pingInterval = builder.pingInterval;
+        this.webSocketCompression = builder.webSocketCompression;
+        this.webSocketContextTakeover = builder.webSocketContextTakeover;
+        this.webSocketMaxQueueSize = builder.webSocketMaxQueueSize;
+        this.webSocketCloseOnOverflow = builder.webSocketCloseOnOverflow;
+        this.webSocketMaxMessageSize = builder.webSocketMaxMessageSize;
+        this.webSocketStreamBinaryMessages = builder.webSocketStreamBinaryMessages;
+        this.webSocketScheduler = builder.webSocketScheduler;
+        this.pipelinedHosts = Util.immutableList(builder.pipelinedHosts);
+        this.maxPipelinedRequests = builder.maxPipelinedRequests;
+        this.defaultHeaders = builder.defaultHeaders.size() == 0
+                && builder.hostDefaultHeaders.isEmpty()
+                ? DefaultHeaders.NONE
+                : new DefaultHeaders(builder.defaultHeaders, builder.hostDefaultHeaders);
+        this.contentDecoders = builder.contentDecoders;
+        this.requestEncoder = builder.requestEncoder;
+        this.requestCompressionMinimumSize = builder.requestCompressionMinimumSize;
 
         if (interceptors.contains(null)) {
             throw new IllegalStateException("Null interceptor: " + interceptors);
@@ -352,6 +407,44 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
         return pingInterval;
     }
 
+    /** Returns true if web sockets offer permessage-deflate compression. */
+    public boolean webSocketCompression() {
+        return webSocketCompression;
+    }
+
+    /** Returns true if compressed web socket messages share a compression context. */
+    public boolean webSocketContextTakeover() {
+        return webSocketContextTakeover;
+    }
+
+    /** Returns the maximum size in bytes of each web socket's outgoing message queue. */
+    public long webSocketMaxQueueSize() {
+        return webSocketMaxQueueSize;
+    }
+
+    /** Returns true if web sockets are closed when a message would overflow their queue. */
+    public boolean webSocketCloseOnOverflow() {
+        return webSocketCloseOnOverflow;
+    }
+
+    /** Returns the maximum size in bytes of the messages web sockets will receive. */
+    public long webSocketMaxMessageSize() {
+        return webSocketMaxMessageSize;
+    }
+
+    /** Returns true if received binary web socket messages are streamed to the listener. */
+    public boolean webSocketStreamBinaryMessages() {
+        return webSocketStreamBinaryMessages;
+    }
+
+    /**
+     * Returns the scheduler shared by web sockets for their writes and pings, or null if each web
+     * socket uses its own thread.
+     */
+    public @Nullable ScheduledExecutorService webSocketScheduler() {
+        return webSocketScheduler;
+    }
+
     public Proxy proxy() {
         return proxy;
     }
@@ -404,6 +497,10 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
         return connectionPool;
     }
 
+    public @Nullable TlsSessionCache tlsSessionCache() {
+        return tlsSessionCache;
+    }
+
     public boolean followSslRedirects() {
         return followSslRedirects;
     }
@@ -416,6 +513,45 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
         return retryOnConnectionFailure;
     }
 
+    /** Returns the hosts whose HTTP/1.1 GET and HEAD requests may be pipelined. */
+    public List<String> pipelinedHosts() {
+        return pipelinedHosts;
+    }
+
+    /** Returns the maximum number of pipelined requests in flight on a single connection. */
+    public int maxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    /** Returns the decoders for response content codings, in order of preference. */
+    public List<ContentDecoder> contentDecoders() {
+        return contentDecoders;
+    }
+
+    /** Returns the encoder used to compress request bodies, or null if they aren't compressed. */
+    public @Nullable ContentEncoder requestEncoder() {
+        return requestEncoder;
+    }
+
+    /** Returns the smallest known-length request body that this client compresses. */
+    public long requestCompressionMinimumSize() {
+        return requestCompressionMinimumSize;
+    }
+
+    /** Returns the headers added to every request made by this client. */
+    public Headers defaultHeaders() {
+        return defaultHeaders.headers();
+    }
+
+    /**
+     * Returns the headers added to requests to {@code host}, in addition to {@link
+     * #defaultHeaders()}.
+     */
+    public Headers defaultHeaders(String host) {
+        Headers result = defaultHeaders.hostHeaders().get(host.toLowerCase(Locale.US));
+        return result != null ? result : Util.EMPTY_HEADERS;
+    }
+
     public Dispatcher dispatcher() {
         return dispatcher;
     }
@@ -466,7 +602,8 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
      */
     @Override
     public WebSocket newWebSocket(Request request, WebSocketListener listener) {
-        RealWebSocket webSocket = new RealWebSocket(request, listener, new Random(), pingInterval);
+        RealWebSocket webSocket = new RealWebSocket(request, listener, new Random(), pingInterval,
+                webSocketMaxQueueSize, webSocketCloseOnOverflow);
         webSocket.connect(this);
         return webSocket;
     }
@@ -500,6 +637,7 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
         Authenticator proxyAuthenticator;
         Authenticator authenticator;
         ConnectionPool connectionPool;
+        @Nullable TlsSessionCache tlsSessionCache;
         Dns dns;
         boolean followSslRedirects;
         boolean followRedirects;
@@ -508,6 +646,20 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
         int readTimeout;
         int writeTimeout;
         int pingInterval;
+        boolean webSocketCompression;
+        boolean webSocketContextTakeover;
+        long webSocketMaxQueueSize;
+        boolean webSocketCloseOnOverflow;
+        long webSocketMaxMessageSize;
+        boolean webSocketStreamBinaryMessages;
+        @Nullable ScheduledExecutorService webSocketScheduler;
+        final List<String> pipelinedHosts = new ArrayList<>();
+        int maxPipelinedRequests;
+        Headers defaultHeaders;
+        final Map<String, Headers> hostDefaultHeaders = new LinkedHashMap<>();
+        List<ContentDecoder> contentDecoders;
+        @Nullable ContentEncoder requestEncoder;
+        long requestCompressionMinimumSize;
 
         public Builder() {
             dispatcher = new Dispatcher();
@@ -531,6 +683,13 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
             readTimeout = 10_000;
             writeTimeout = 10_000;
             pingInterval = 0;
+            webSocketContextTakeover = true;
+            webSocketMaxQueueSize = RealWebSocket.DEFAULT_MAX_QUEUE_SIZE;
+            webSocketCloseOnOverflow = true;
+            webSocketMaxMessageSize = Long.MAX_VALUE;
+            maxPipelinedRequests = 4;
+            defaultHeaders = Util.EMPTY_HEADERS;
+            contentDecoders = DEFAULT_CONTENT_DECODERS;
         }
 
         Builder(OkHttpClient okHttpClient) {
@@ -553,6 +712,7 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
             this.proxyAuthenticator = okHttpClient.proxyAuthenticator;
             this.authenticator = okHttpClient.authenticator;
             this.connectionPool = okHttpClient.connectionPool;
+            this.tlsSessionCache = okHttpClient.tlsSessionCache;
             this.dns = okHttpClient.dns;
             this.followSslRedirects = okHttpClient.followSslRedirects;
             this.followRedirects = okHttpClient.followRedirects;
@@ -561,6 +721,20 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
             this.readTimeout = okHttpClient.readTimeout;
             this.writeTimeout = okHttpClient.writeTimeout;
             this.pingInterval = okHttpClient.pingInterval;
+            this.webSocketCompression = okHttpClient.webSocketCompression;
+            this.webSocketContextTakeover = okHttpClient.webSocketContextTakeover;
+            this.webSocketMaxQueueSize = okHttpClient.webSocketMaxQueueSize;
+            this.webSocketCloseOnOverflow = okHttpClient.webSocketCloseOnOverflow;
+            this.webSocketMaxMessageSize = okHttpClient.webSocketMaxMessageSize;
+            this.webSocketStreamBinaryMessages = okHttpClient.webSocketStreamBinaryMessages;
+            this.webSocketScheduler = okHttpClient.webSocketScheduler;
+            this.pipelinedHosts.addAll(okHttpClient.pipelinedHosts);
+            this.maxPipelinedRequests = okHttpClient.maxPipelinedRequests;
+            this.defaultHeaders = okHttpClient.defaultHeaders.headers();
+            this.hostDefaultHeaders.putAll(okHttpClient.defaultHeaders.hostHeaders());
+            this.contentDecoders = okHttpClient.contentDecoders;
+            this.requestEncoder = okHttpClient.requestEncoder;
+            this.requestCompressionMinimumSize = okHttpClient.requestCompressionMinimumSize;
         }
 
         /**
@@ -629,6 +803,93 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
             return this;
         }
 
+        /**
+         * Configure web sockets to negotiate the <a href="https://tools.ietf.org/html/rfc7692">
+         * permessage-deflate</a> extension. If the server accepts it, messages of 128 bytes or more
+         * are compressed, and compressed messages from the server are decompressed as they're
+         * read.
+         *
+         * <p>With {@code contextTakeover}, each message is compressed with the history of the
+         * messages before it, which compresses streams of similar messages best. Without it, both
+         * peers compress each message independently and keep less state per web socket.
+         *
+         * <p>Web socket compression is disabled by default.
+         */
+        public Builder webSocketCompression(boolean enabled, boolean contextTakeover) {
+            this.webSocketCompression = enabled;
+            this.webSocketContextTakeover = contextTakeover;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size in bytes of the messages each web socket may have enqueued but not
+         * yet transmitted, and what happens when a {@linkplain WebSocket#send sent} message would
+         * exceed it.
+         *
+         * <p>With {@code closeOnOverflow} the web socket is gracefully shut down, which is the
+         * default. Otherwise the message is rejected but the web socket stays open, and its
+         * listener is {@linkplain WebSocketListener#onQueueDrained notified} once the queue has
+         * drained to half of {@code maxQueueSize}, so that publishers can apply backpressure.
+         *
+         * <p>The default limit is 16 MiB.
+         */
+        public Builder webSocketQueue(long maxQueueSize, boolean closeOnOverflow) {
+            if (maxQueueSize <= 0) {
+                throw new IllegalArgumentException("maxQueueSize <= 0: " + maxQueueSize);
+            }
+            this.webSocketMaxQueueSize = maxQueueSize;
+            this.webSocketCloseOnOverflow = closeOnOverflow;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size in bytes of the messages each web socket will receive, measured
+         * after any decompression. A web socket {@linkplain WebSocketListener#onFailure fails} when
+         * its peer sends a larger message; the limit is checked as frames arrive, so an oversized
+         * message is rejected before it is buffered.
+         *
+         * <p>By default there is no limit.
+         */
+        public Builder webSocketMaxMessageSize(long maxMessageSize) {
+            if (maxMessageSize <= 0) {
+                throw new IllegalArgumentException("maxMessageSize <= 0: " + maxMessageSize);
+            }
+            this.webSocketMaxMessageSize = maxMessageSize;
+            return this;
+        }
+
+        /**
+         * Configure web sockets to deliver received binary messages to {@link
+         * WebSocketListener#onMessage(WebSocket, okio.BufferedSource)} as a stream that reads the
+         * message's frames as it is consumed, rather than buffering each message in memory. This
+         * lets large payloads be processed incrementally. Text messages are always buffered.
+         *
+         * <p>Binary messages are buffered by default.
+         */
+        public Builder webSocketStreamBinaryMessages(boolean streamBinaryMessages) {
+            this.webSocketStreamBinaryMessages = streamBinaryMessages;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that web sockets use to write messages, send pings, and time out
+         * closes. Each web socket's tasks run in order and take turns with the other web sockets'
+         * tasks, so a process with many web sockets needs only as many writer threads as the
+         * scheduler has. The scheduler isn't shut down when web sockets close.
+         *
+         * <p>If this is null, which is the default, each web socket creates its own writer thread.
+         *
+         * <p>Each web socket also reads on a thread of the {@linkplain #dispatcher dispatcher's}
+         * executor service. That thread blocks for as long as the web socket is open, so
+         * applications with many web sockets should give the dispatcher an executor service that
+         * makes threads cheaply, and raise its {@linkplain Dispatcher#setMaxRequests request
+         * limits}.
+         */
+        public Builder webSocketScheduler(@Nullable ScheduledExecutorService scheduler) {
+            this.webSocketScheduler = scheduler;
+            return this;
+        }
+
         /**
          * Sets the HTTP proxy that will be used by connections created by this client. This takes
          * precedence over {@link #proxySelector}, which is only honored when this proxy is null
@@ -840,6 +1101,24 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
             return this;
         }
 
+        /**
+         * Sets the cache used to track and retire the TLS sessions of HTTPS connections. Share a
+         * cache between clients that share a connection pool.
+         *
+         * <p>The cache {@linkplain SSLSession#invalidate() invalidates} the sessions it retires.
+         * Those sessions live in the session context of the address's {@code SSLSocketFactory},
+         * which is usually shared with other clients and libraries in the process, so only use a
+         * session cache if this client owns its socket factory.
+         *
+         * <p>By default there is no session cache: the platform resumes sessions on its own terms,
+         * and {@link EventListener#secureConnectEnd(Call, Handshake, boolean, long)} reports
+         * resumptions estimated from each session's creation time.
+         */
+        public Builder tlsSessionCache(@Nullable TlsSessionCache tlsSessionCache) {
+            this.tlsSessionCache = tlsSessionCache;
+            return this;
+        }
+
         /**
          * Configure this client to follow redirects from HTTPS to HTTP and from HTTP to HTTPS.
          *
@@ -886,6 +1165,120 @@ public class OkHttpClient implements Cloneable, Call.Factory, WebSocket.Factory
             return this;
         }
 
+        /**
+         * Enables HTTP/1.1 pipelining of GET and HEAD requests to {@code hosts}. Pipelined requests
+         * are written to a connection without waiting for the responses to the requests ahead of
+         * them, and responses are read in the order the requests were written. This lets a few
+         * connections carry many concurrent calls to servers that don't support HTTP/2.
+         *
+         * <p>Many servers and proxies handle pipelining incorrectly, so only enable it for hosts
+         * known to support it. A connection only starts pipelining after it has returned a
+         * persistent HTTP/1.1 response. If a pipelined exchange fails, the connection is retired
+         * and the exchanges queued behind it are retried on another connection, subject to
+         * {@link #retryOnConnectionFailure}.
+         *
+         * <p>A call waits for its turn on a pipeline no longer than its read and write timeouts, so
+         * calls with either timeout disabled aren't pipelined. A call never joins a pipeline that
+         * has an exchange from the same thread in flight; it uses another connection instead.
+         *
+         * <p>By default no hosts are pipelined.
+         */
+        public Builder pipelinedHosts(List<String> hosts) {
+            if (hosts == null) throw new NullPointerException("hosts == null");
+            pipelinedHosts.clear();
+            for (String host : hosts) {
+                if (host == null) throw new IllegalArgumentException("hosts must not contain null");
+                pipelinedHosts.add(host.toLowerCase(Locale.US));
+            }
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests that may be in flight at once on a pipelined
+         * connection. The default is 4.
+         */
+        public Builder maxPipelinedRequests(int maxPipelinedRequests) {
+            if (maxPipelinedRequests < 1) {
+                throw new IllegalArgumentException("max < 1: " + maxPipelinedRequests);
+            }
+            this.maxPipelinedRequests = maxPipelinedRequests;
+            return this;
+        }
+
+        /**
+         * Sets headers to add to every request made by this client. A request's own header of the
+         * same name takes precedence. This replaces any previously configured default headers.
+         *
+         * <p>Default headers are added to each network request after the application
+         * interceptors run, so network interceptors, event listeners and the cache see them.
+         * They're also encoded once when the client is built, so HTTP/1.1 requests that carry all
+         * of them write them with a single copy. Use them for headers like {@code User-Agent} or
+         * {@code Accept} whose values don't change from call to call; if {@code User-Agent} or
+         * {@code Accept-Encoding} have defaults the client doesn't add its own. A default {@code
+         * Accept-Encoding} isn't added to requests with a {@code Range} header.
+         *
+         * @throws IllegalArgumentException if {@code headers} includes {@code Content-Length},
+         *     {@code Transfer-Encoding}, {@code Host} or {@code Connection}. Those depend on each
+         *     request and its connection.
+         */
+        public Builder defaultHeaders(Headers headers) {
+            if (headers == null) throw new NullPointerException("headers == null");
+            DefaultHeaders.checkDefaults(headers);
+            this.defaultHeaders = headers;
+            return this;
+        }
+
+        /**
+         * Sets headers to add to every request to {@code host}. These take precedence over the
+         * {@linkplain #defaultHeaders(Headers) client's default headers} of the same name, and a
+         * request's own header takes precedence over both.
+         *
+         * @throws IllegalArgumentException if {@code headers} includes {@code Content-Length},
+         *     {@code Transfer-Encoding}, {@code Host} or {@code Connection}.
+         */
+        public Builder defaultHeaders(String host, Headers headers) {
+            if (host == null) throw new NullPointerException("host == null");
+            if (headers == null) throw new NullPointerException("headers == null");
+            DefaultHeaders.checkDefaults(headers);
+            hostDefaultHeaders.put(host.toLowerCase(Locale.US), headers);
+            return this;
+        }
+
+        /**
+         * Configure the content codings this client decodes transparently, in order of preference.
+         * Unless a request has its own {@code Accept-Encoding} header, the client advertises these
+         * encodings and decodes responses that use them. Responses with other encodings are
+         * returned undecoded.
+         *
+         * <p>By default this client decodes {@linkplain ContentDecoder#GZIP gzip}. Use an empty
+         * list to disable transparent decoding.
+         */
+        public Builder contentDecoders(List<ContentDecoder> contentDecoders) {
+            List<ContentDecoder> result = Util.immutableList(contentDecoders);
+            if (result.contains(null)) {
+                throw new IllegalArgumentException("contentDecoders must not contain null");
+            }
+            this.contentDecoders = result;
+            return this;
+        }
+
+        /**
+         * Compress request bodies with {@code encoder} as they are written. Bodies are compressed
+         * if their length is unknown or at least {@code minimumSize} bytes, and sent with a {@code
+         * Content-Encoding} header and chunked transfer encoding. Requests that already have a
+         * {@code Content-Encoding} header are sent as-is; use {@code Content-Encoding: identity}
+         * to opt a single request out.
+         *
+         * <p>Request compression is disabled by default; pass a null encoder to disable it. Use
+         * {@link RequestBody#compressed} to compress individual request bodies instead.
+         */
+        public Builder requestCompression(@Nullable ContentEncoder encoder, long minimumSize) {
+            if (minimumSize < 0) throw new IllegalArgumentException("minimumSize < 0");
+            this.requestEncoder = encoder;
+            this.requestCompressionMinimumSize = minimumSize;
+            return this;
+        }
+
         /**
          * Sets the dispatcher used to set policy and execute asynchronous requests. Must not be
          * null.
@@ -214,9 +214,9 @@ final class RealCall implements Call {
         //重定向与重试--重试和重定向的话，会重新走后面的拦截器
         interceptors.add(retryAndFollowUpInterceptor);
         //Header,Body处理
-        interceptors.add(new BridgeInterceptor(client.cookieJar()));
+        interceptors.add(new BridgeInterceptor(client));
         //缓存处理
-        interceptors.add(new CacheInterceptor(client.internalCache()));
+        interceptors.add(new CacheInterceptor(client.internalCache(), client));
         //连接处理
         interceptors.add(new ConnectInterceptor(client));
         if (!forWebSocket) {
@@ -20,10 +20,10 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import javax.annotation.Nullable;
 import okhttp3.internal.Util;
+import okhttp3.internal.http.EncodedRequestBody;
+import okhttp3.internal.http.FileRequestBody;
 import okio.BufferedSink;
 import okio.ByteString;
-import okio.Okio;
-import okio.Source;
 
 public abstract class RequestBody {
   /** Returns the Content-Type header for this body. */
@@ -100,28 +100,26 @@ public abstract class RequestBody {
     };
   }
 
-  /** Returns a new request body that transmits the content of {@code file}. */
+  /**
+   * Returns a new request body that transmits the content of {@code file}. On plaintext HTTP/1.1
+   * connections whose sockets have {@linkplain java.net.Socket#getChannel channels} the file is
+   * sent with {@link java.nio.channels.FileChannel#transferTo}.
+   */
   public static RequestBody create(final @Nullable MediaType contentType, final File file) {
     if (file == null) throw new NullPointerException("content == null");
 
-    return new RequestBody() {
-      @Override public @Nullable MediaType contentType() {
-        return contentType;
-      }
+    return new FileRequestBody(contentType, file);
+  }
 
-      @Override public long contentLength() {
-        return file.length();
-      }
+  /**
+   * Returns a new request body that compresses {@code body} with {@code encoder} as it is written.
+   * The request is sent with a {@code Content-Encoding} header naming the encoding and, because
+   * its compressed length isn't known in advance, with chunked transfer encoding.
+   */
+  public static RequestBody compressed(ContentEncoder encoder, RequestBody body) {
+    if (encoder == null) throw new NullPointerException("encoder == null");
+    if (body == null) throw new NullPointerException("body == null");
 
-      @Override public void writeTo(BufferedSink sink) throws IOException {
-        Source source = null;
-        try {
-          source = Okio.source(file);
-          sink.writeAll(source);
-        } finally {
-          Util.closeQuietly(source);
-        }
-      }
-    };
+    return new EncodedRequestBody(body, encoder);
   }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Tracks the TLS sessions negotiated with each {@link Address} and {@link ConnectionSpec} so that
+ * later handshakes can be identified as resumed or full, and so that sessions can be retired
+ * after a fixed lifetime or when too many are held.
+ *
+ * <p>The platform's TLS implementation resumes sessions itself, from the session context of the
+ * address's {@link javax.net.ssl.SSLSocketFactory}. Sessions evicted from this cache are
+ * {@linkplain SSLSession#invalidate() invalidated} so that they won't be resumed again. That
+ * session context is typically shared by every user of the socket factory, so only install a
+ * session cache on clients whose socket factory isn't shared.
+ *
+ * <p>Whether a handshake resumed a session is inferred from the session's ID and creation time;
+ * JSSE doesn't report it directly. This is reliable for TLS 1.2. With TLS 1.3, resumption uses
+ * pre-shared keys and session tickets: the session ID is no longer meaningful, and some providers
+ * give a resumed session a fresh creation time. TLS 1.3 resumptions may therefore be counted as
+ * full handshakes.
+ */
+public final class TlsSessionCache {
+  private final int maxSessions;
+  private final long sessionLifetimeMillis;
+
+  /** Sessions by key, least recently used first. */
+  private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private int resumedCount;
+  private int fullHandshakeCount;
+
+  /**
+   * Create a new session cache with tuning parameters appropriate for a single-user application.
+   * Currently this holds up to 64 sessions which are retired after 12 hours.
+   */
+  public TlsSessionCache() {
+    this(64, 12, TimeUnit.HOURS);
+  }
+
+  public TlsSessionCache(int maxSessions, long sessionLifetime, TimeUnit timeUnit) {
+    if (maxSessions <= 0) throw new IllegalArgumentException("maxSessions <= 0: " + maxSessions);
+    if (sessionLifetime <= 0) {
+      throw new IllegalArgumentException("sessionLifetime <= 0: " + sessionLifetime);
+    }
+    this.maxSessions = maxSessions;
+    this.sessionLifetimeMillis = timeUnit.toMillis(sessionLifetime);
+  }
+
+  /** Returns the number of sessions in the cache. */
+  public synchronized int sessionCount() {
+    return entries.size();
+  }
+
+  /** Returns the number of handshakes that resumed a previous session. */
+  public synchronized int resumedCount() {
+    return resumedCount;
+  }
+
+  /** Returns the number of handshakes that negotiated a new session. */
+  public synchronized int fullHandshakeCount() {
+    return fullHandshakeCount;
+  }
+
+  /** Invalidates and removes all sessions. Subsequent handshakes will be full handshakes. */
+  public synchronized void evictAll() {
+    for (Entry entry : entries.values()) {
+      entry.session.invalidate();
+    }
+    entries.clear();
+  }
+
+  /**
+   * Records that a handshake that started at {@code handshakeStartMillis} established {@code
+   * session} with {@code address} using {@code connectionSpec}. Returns true if the handshake
+   * resumed a previous session.
+   */
+  synchronized boolean sessionEstablished(Address address, ConnectionSpec connectionSpec,
+      SSLSession session, long handshakeStartMillis) {
+    Key key = new Key(address, connectionSpec);
+    Entry previous = entries.get(key);
+
+    boolean resumed = isResumed(previous, session, handshakeStartMillis);
+    if (resumed) {
+      resumedCount++;
+    } else {
+      fullHandshakeCount++;
+    }
+
+    if (previous != null && previous.session != session && !resumed) {
+      previous.session.invalidate();
+    }
+    entries.put(key, new Entry(session));
+    evict(handshakeStartMillis);
+    return resumed;
+  }
+
+  /**
+   * Returns true if {@code session} appears to have been resumed rather than negotiated by a
+   * handshake that started at {@code handshakeStartMillis}. A resumed TLS 1.2 session keeps the ID
+   * and creation time of the handshake that created it; TLS 1.3 sessions may not.
+   */
+  static boolean isResumed(@Nullable Entry previous, SSLSession session,
+      long handshakeStartMillis) {
+    return (previous != null && Arrays.equals(previous.id, session.getId()))
+        || session.getCreationTime() < handshakeStartMillis;
+  }
+
+  /** Retires sessions that are older than the lifetime or beyond the capacity. */
+  private void evict(long nowMillis) {
+    for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+      Entry entry = i.next();
+      if (entries.size() > maxSessions
+          || !entry.session.isValid()
+          || nowMillis - entry.session.getCreationTime() >= sessionLifetimeMillis) {
+        entry.session.invalidate();
+        i.remove();
+      }
+    }
+  }
+
+  static final class Key {
+    final Address address;
+    final ConnectionSpec connectionSpec;
+
+    Key(Address address, ConnectionSpec connectionSpec) {
+      this.address = address;
+      this.connectionSpec = connectionSpec;
+    }
+
+    @Override public boolean equals(Object other) {
+      return other instanceof Key
+          && ((Key) other).address.equals(address)
+          && ((Key) other).connectionSpec.equals(connectionSpec);
+    }
+
+    @Override public int hashCode() {
+      return 31 * address.hashCode() + connectionSpec.hashCode();
+    }
+  }
+
+  static final class Entry {
+    final SSLSession session;
+    final byte[] id;
+
+    Entry(SSLSession session) {
+      this.session = session;
+      this.id = session.getId();
+    }
+  }
+}
@@ -64,14 +64,21 @@ public interface WebSocket {
    */
   long queueSize();
 
+  /**
+   * Returns a snapshot of this web socket's outgoing message queue and of the bytes it has sent and
+   * received, before and after compression.
+   */
+  WebSocketStats stats();
+
   /**
    * Attempts to enqueue {@code text} to be UTF-8 encoded and sent as a the data of a text (type
    * {@code 0x1}) message.
    *
    * <p>This method returns true if the message was enqueued. Messages that would overflow the
-   * outgoing message buffer will be rejected and trigger a {@linkplain #close graceful shutdown} of
-   * this web socket. This method returns false in that case, and in any other case where this
-   * web socket is closing, closed, or canceled.
+   * outgoing message buffer will be rejected and, unless the client was {@linkplain
+   * OkHttpClient.Builder#webSocketQueue configured} to apply backpressure, trigger a {@linkplain
+   * #close graceful shutdown} of this web socket. This method returns false in that case, and in
+   * any other case where this web socket is closing, closed, or canceled.
    *
    * <p>This method returns immediately.
    */
@@ -82,7 +89,8 @@ public interface WebSocket {
    * message.
    *
    * <p>This method returns true if the message was enqueued. Messages that would overflow the
-   * outgoing message buffer (16 MiB) will be rejected and trigger a
+   * outgoing message buffer (16 MiB by default) will be rejected and, unless the client was
+   * {@linkplain OkHttpClient.Builder#webSocketQueue configured} to apply backpressure, trigger a
    * {@linkplain #close graceful shutdown} of this web socket. This method returns false in that
    * case, and in any other case where this web socket is closing, closed, or canceled.
    *
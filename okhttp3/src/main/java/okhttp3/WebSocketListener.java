@@ -15,7 +15,9 @@
  */
 package okhttp3;
 
+import java.io.IOException;
 import javax.annotation.Nullable;
+import okio.BufferedSource;
 import okio.ByteString;
 
 public abstract class WebSocketListener {
@@ -34,6 +36,19 @@ public abstract class WebSocketListener {
   public void onMessage(WebSocket webSocket, ByteString bytes) {
   }
 
+  /**
+   * Invoked when a binary (type {@code 0x2}) message starts to arrive, if the client was
+   * {@linkplain OkHttpClient.Builder#webSocketStreamBinaryMessages configured} to stream them. The
+   * message's frames are read from the network as {@code message} is consumed. It must be consumed
+   * before this method returns; whatever is left unread is skipped.
+   *
+   * <p>The default implementation reads the entire message into memory and calls {@link
+   * #onMessage(WebSocket, ByteString)}.
+   */
+  public void onMessage(WebSocket webSocket, BufferedSource message) throws IOException {
+    onMessage(webSocket, message.readByteString());
+  }
+
   /**
    * Invoked when the remote peer has indicated that no more incoming messages will be
    * transmitted.
@@ -41,6 +56,15 @@ public abstract class WebSocketListener {
   public void onClosing(WebSocket webSocket, int code, String reason) {
   }
 
+  /**
+   * Invoked when the outgoing message queue has drained to half of its limit after a call to
+   * {@link WebSocket#send} was rejected because the queue was full. Publishers that apply
+   * backpressure can resume sending. This is only invoked for web sockets whose client was
+   * {@linkplain OkHttpClient.Builder#webSocketQueue configured} not to close on overflow.
+   */
+  public void onQueueDrained(WebSocket webSocket) {
+  }
+
   /**
    * Invoked when both peers have indicated that no more messages will be transmitted and the
    * connection has been successfully released. No further calls to this listener will be made.
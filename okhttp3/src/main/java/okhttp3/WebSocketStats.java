@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3;
+
+/**
+ * A snapshot of a web socket's outgoing message queue and traffic, as returned by {@link
+ * WebSocket#stats}. Publishers can use it to watch how close the queue is to its limit, and to see
+ * how much permessage-deflate compression saves: message sizes are counted before compression on
+ * the way out and after decompression on the way in, while payload sizes are what crossed the
+ * network.
+ */
+public final class WebSocketStats {
+  private final long queueSize;
+  private final int queuedMessageCount;
+  private final long maxQueueSize;
+  private final int rejectedMessageCount;
+  private final long sentMessageBytes;
+  private final long sentPayloadBytes;
+  private final long receivedMessageBytes;
+  private final long receivedPayloadBytes;
+
+  public WebSocketStats(long queueSize, int queuedMessageCount, long maxQueueSize,
+      int rejectedMessageCount, long sentMessageBytes, long sentPayloadBytes,
+      long receivedMessageBytes, long receivedPayloadBytes) {
+    this.queueSize = queueSize;
+    this.queuedMessageCount = queuedMessageCount;
+    this.maxQueueSize = maxQueueSize;
+    this.rejectedMessageCount = rejectedMessageCount;
+    this.sentMessageBytes = sentMessageBytes;
+    this.sentPayloadBytes = sentPayloadBytes;
+    this.receivedMessageBytes = receivedMessageBytes;
+    this.receivedPayloadBytes = receivedPayloadBytes;
+  }
+
+  /** Returns the size in bytes of the messages enqueued but not yet transmitted. */
+  public long queueSize() {
+    return queueSize;
+  }
+
+  /** Returns the number of messages enqueued but not yet transmitted. */
+  public int queuedMessageCount() {
+    return queuedMessageCount;
+  }
+
+  /**
+   * Returns the maximum size in bytes of the messages that may be enqueued. Messages that would
+   * overflow it are rejected.
+   */
+  public long maxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /** Returns the number of messages rejected because they would have overflowed the queue. */
+  public int rejectedMessageCount() {
+    return rejectedMessageCount;
+  }
+
+  /** Returns the total size of the messages sent, before any compression. */
+  public long sentMessageBytes() {
+    return sentMessageBytes;
+  }
+
+  /**
+   * Returns the total size of the message payloads sent. This is smaller than {@link
+   * #sentMessageBytes} by the savings of permessage-deflate compression.
+   */
+  public long sentPayloadBytes() {
+    return sentPayloadBytes;
+  }
+
+  /** Returns the total size of the messages received, after any decompression. */
+  public long receivedMessageBytes() {
+    return receivedMessageBytes;
+  }
+
+  /**
+   * Returns the total size of the message payloads received. This is smaller than {@link
+   * #receivedMessageBytes} by the savings of permessage-deflate compression.
+   */
+  public long receivedPayloadBytes() {
+    return receivedPayloadBytes;
+  }
+
+  @Override public String toString() {
+    return "WebSocketStats{"
+        + "queueSize=" + queueSize
+        + ", queuedMessageCount=" + queuedMessageCount
+        + ", maxQueueSize=" + maxQueueSize
+        + ", rejectedMessageCount=" + rejectedMessageCount
+        + ", sentMessageBytes=" + sentMessageBytes
+        + ", sentPayloadBytes=" + sentPayloadBytes
+        + ", receivedMessageBytes=" + receivedMessageBytes
+        + ", receivedPayloadBytes=" + receivedPayloadBytes
+        + '}';
+  }
+}
@@ -18,6 +18,8 @@ package okhttp3.internal;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import okhttp3.Address;
 import okhttp3.Call;
@@ -29,10 +31,12 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.Route;
+import okhttp3.TlsSessionCache;
 import okhttp3.internal.cache.InternalCache;
 import okhttp3.internal.connection.RealConnection;
 import okhttp3.internal.connection.RouteDatabase;
 import okhttp3.internal.connection.StreamAllocation;
+import okhttp3.internal.http.DefaultHeaders;
 
 /**
  * Escalate internal APIs in {@code okhttp3} so they can be used from OkHttp's implementation
@@ -78,4 +82,9 @@ public abstract class Internal {
   public abstract StreamAllocation streamAllocation(Call call);
 
   public abstract Call newWebSocketCall(OkHttpClient client, Request request);
+
+  public abstract DefaultHeaders defaultHeaders(OkHttpClient client);
+
+  public abstract boolean sessionEstablished(@Nullable TlsSessionCache cache, Address address,
+      ConnectionSpec connectionSpec, SSLSession session, long handshakeStartMillis);
 }
@@ -35,6 +35,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
+import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
@@ -47,6 +48,7 @@ import okio.Source;
 public final class Util {
   public static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
   public static final String[] EMPTY_STRING_ARRAY = new String[0];
+  public static final Headers EMPTY_HEADERS = Headers.of();
 
   public static final ResponseBody EMPTY_RESPONSE = ResponseBody.create(null, EMPTY_BYTE_ARRAY);
   public static final RequestBody EMPTY_REQUEST = RequestBody.create(null, EMPTY_BYTE_ARRAY);
@@ -64,6 +66,9 @@ public final class Util {
   private static final Charset UTF_32_BE = Charset.forName("UTF-32BE");
   private static final Charset UTF_32_LE = Charset.forName("UTF-32LE");
 
+  private static final char[] HEX_DIGITS =
+      {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
   /** GMT and UTC are equivalent for our purposes. */
   public static final TimeZone UTC = TimeZone.getTimeZone("GMT");
 
@@ -478,6 +483,78 @@ public final class Util {
     return -1;
   }
 
+  /**
+   * Returns the 128-bit MurmurHash3 (x64 variant) of the UTF-16 code units of {@code s}, as 32
+   * lowercase hex digits. This is much cheaper than MD5 because it needs no encoding step and no
+   * message digest, but it is not a cryptographic hash.
+   */
+  public static String murmur3Hex(String s) {
+    final long c1 = 0x87c37b91114253d5L;
+    final long c2 = 0x4cf5ad432745937fL;
+    long h1 = 0L;
+    long h2 = 0L;
+    int length = s.length();
+
+    // Each 16-byte block is eight chars, packed little-endian into two longs.
+    int i = 0;
+    for (; i + 8 <= length; i += 8) {
+      long k1 = s.charAt(i)
+          | (long) s.charAt(i + 1) << 16
+          | (long) s.charAt(i + 2) << 32
+          | (long) s.charAt(i + 3) << 48;
+      long k2 = s.charAt(i + 4)
+          | (long) s.charAt(i + 5) << 16
+          | (long) s.charAt(i + 6) << 32
+          | (long) s.charAt(i + 7) << 48;
+
+      h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+      h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+      h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+      h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+    }
+
+    int remaining = length - i;
+    if (remaining > 4) {
+      long k2 = 0L;
+      for (int j = remaining - 1; j >= 4; j--) {
+        k2 = (k2 << 16) | s.charAt(i + j);
+      }
+      h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+    }
+    if (remaining > 0) {
+      long k1 = 0L;
+      for (int j = Math.min(remaining, 4) - 1; j >= 0; j--) {
+        k1 = (k1 << 16) | s.charAt(i + j);
+      }
+      h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+    }
+
+    h1 ^= length * 2L;
+    h2 ^= length * 2L;
+    h1 += h2;
+    h2 += h1;
+    h1 = murmur3Mix(h1);
+    h2 = murmur3Mix(h2);
+    h1 += h2;
+    h2 += h1;
+
+    char[] result = new char[32];
+    for (int j = 0; j < 16; j++) {
+      result[15 - j] = HEX_DIGITS[(int) (h1 >>> (j << 2)) & 0xf];
+      result[31 - j] = HEX_DIGITS[(int) (h2 >>> (j << 2)) & 0xf];
+    }
+    return new String(result);
+  }
+
+  private static long murmur3Mix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
   /** Decodes an IPv6 address like 1111:2222:3333:4444:5555:6666:7777:8888 or ::1. */
   private static @Nullable InetAddress decodeIpv6(String input, int pos, int limit) {
     byte[] address = new byte[16];
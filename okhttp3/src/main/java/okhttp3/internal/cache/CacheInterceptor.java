@@ -17,7 +17,12 @@
 package okhttp3.internal.cache;
 
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.annotation.Nullable;
+
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
 import okhttp3.Interceptor;
 import okhttp3.Protocol;
@@ -49,8 +54,12 @@ import static okhttp3.internal.Util.discard;
 public final class CacheInterceptor implements Interceptor {
     final InternalCache cache;
 
-    public CacheInterceptor(InternalCache cache) {
+    /** Makes background revalidation calls, or null to serve stale responses without them. */
+    final @Nullable Call.Factory callFactory;
+
+    public CacheInterceptor(InternalCache cache, @Nullable Call.Factory callFactory) {
         this.cache = cache;
+        this.callFactory = callFactory;
     }
 
     @Override
@@ -69,12 +78,13 @@ public final class CacheInterceptor implements Interceptor {
         Request networkRequest = strategy.networkRequest;
         //缓存的响应
         Response cacheResponse = strategy.cacheResponse;
+        Response staleIfErrorResponse = strategy.staleIfErrorResponse;
 
         if (cache != null) {
             cache.trackResponse(strategy);
         }
 
-        if (cacheCandidate != null && cacheResponse == null) {
+        if (cacheCandidate != null && cacheResponse == null && staleIfErrorResponse == null) {
             closeQuietly(cacheCandidate.body()); // The cache candidate wasn't applicable. Close it.
         }
 
@@ -95,6 +105,9 @@ public final class CacheInterceptor implements Interceptor {
         //todo 没有请求，肯定就要使用缓存
         //If we don't need the network, we're done.
         if (networkRequest == null) {
+            if (strategy.revalidationRequest != null) {
+                revalidateInBackground(strategy.revalidationRequest, cacheResponse);
+            }
             return cacheResponse.newBuilder()
                     .cacheResponse(stripBody(cacheResponse))
                     .build();
@@ -102,15 +115,32 @@ public final class CacheInterceptor implements Interceptor {
 
         //todo 去发起请求
         Response networkResponse = null;
+        boolean networkFailed = false;
         try {
             networkResponse = chain.proceed(networkRequest);
+        } catch (IOException e) {
+            if (staleIfErrorResponse == null) throw e;
+            networkFailed = true;
         } finally {
             // If we're crashing on I/O or otherwise, don't leak the cache body.
-            if (networkResponse == null && cacheCandidate != null) {
+            if (networkResponse == null && !networkFailed && cacheCandidate != null) {
                 closeQuietly(cacheCandidate.body());
             }
         }
 
+        if (staleIfErrorResponse != null) {
+            if (networkFailed || isServerError(networkResponse.code())) {
+                if (networkResponse != null) closeQuietly(networkResponse.body());
+                return staleIfErrorResponse.newBuilder()
+                        .addHeader("Warning", "111 HttpURLConnection \"Revalidation failed\"")
+                        .cacheResponse(stripBody(staleIfErrorResponse))
+                        .build();
+            }
+            if (staleIfErrorResponse != cacheResponse) {
+                closeQuietly(staleIfErrorResponse.body()); // Not needed; the network succeeded.
+            }
+        }
+
         // If we have a cache response too, then we're doing a conditional get.
         if (cacheResponse != null) {
             //todo 服务器返回304无修改，那就使用缓存的响应修改了时间等数据后作为本次请求的响应
@@ -160,6 +190,65 @@ public final class CacheInterceptor implements Interceptor {
         return response;
     }
 
+    /** Returns true for the errors that RFC 5861 lets a stale-if-error response stand in for. */
+    private static boolean isServerError(int code) {
+        return code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * Sends {@code request} on a new call to refresh the stale {@code cached} response. A 304
+     * updates the stored headers; any other cacheable response is stored by that call's own cache
+     * interceptor as its body is consumed here. The request always bypasses the cache, so that
+     * call can't be served the same stale response. If the dispatcher rejects the call the stale
+     * response is served anyway and a later request will try again.
+     */
+    private void revalidateInBackground(final Request request, final Response cached) {
+        if (callFactory == null) return;
+        final RevalidationTracker tracker = cache instanceof RevalidationTracker
+                ? (RevalidationTracker) cache
+                : null;
+        if (tracker != null && !tracker.startRevalidation(cached)) return;
+
+        try {
+            enqueueRevalidation(request, cached, tracker);
+        } catch (RejectedExecutionException e) {
+            if (tracker != null) tracker.finishRevalidation(cached);
+        }
+    }
+
+    private void enqueueRevalidation(final Request request, final Response cached,
+            @Nullable final RevalidationTracker tracker) {
+        callFactory.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (tracker != null) tracker.finishRevalidation(cached);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (response.code() == HTTP_NOT_MODIFIED) {
+                        Response networkResponse = response.networkResponse() != null
+                                ? response.networkResponse()
+                                : response;
+                        Response updated = cached.newBuilder()
+                                .headers(combine(cached.headers(), response.headers()))
+                                .sentRequestAtMillis(response.sentRequestAtMillis())
+                                .receivedResponseAtMillis(response.receivedResponseAtMillis())
+                                .networkResponse(stripBody(networkResponse))
+                                .build();
+                        cache.update(cached, updated);
+                    } else {
+                        response.body().source().readAll(Okio.blackhole());
+                    }
+                } finally {
+                    closeQuietly(response);
+                    if (tracker != null) tracker.finishRevalidation(cached);
+                }
+            }
+        });
+    }
+
     private static Response stripBody(Response response) {
         return response != null && response.body() != null
                 ? response.newBuilder().body(null).build()
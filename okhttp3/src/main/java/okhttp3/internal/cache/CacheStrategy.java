@@ -62,9 +62,30 @@ public final class CacheStrategy {
     public final @Nullable
     Response cacheResponse;
 
+    /**
+     * A request to send in the background to revalidate {@link #cacheResponse}, which is served
+     * stale in the meantime; or null if the cached response doesn't allow stale-while-revalidate.
+     */
+    public final @Nullable
+    Request revalidationRequest;
+
+    /**
+     * A stale cached response to serve if {@link #networkRequest} fails with an I/O error or a
+     * server error; or null if the cached response doesn't allow stale-if-error.
+     */
+    public final @Nullable
+    Response staleIfErrorResponse;
+
     CacheStrategy(Request networkRequest, Response cacheResponse) {
+        this(networkRequest, cacheResponse, null, null);
+    }
+
+    CacheStrategy(Request networkRequest, Response cacheResponse, Request revalidationRequest,
+            Response staleIfErrorResponse) {
         this.networkRequest = networkRequest;
         this.cacheResponse = cacheResponse;
+        this.revalidationRequest = revalidationRequest;
+        this.staleIfErrorResponse = staleIfErrorResponse;
     }
 
     /**
@@ -203,6 +224,10 @@ public final class CacheStrategy {
                 // We're forbidden from using the network and the cache is insufficient.
                 return new CacheStrategy(null, null);
             }
+            if (candidate.revalidationRequest != null && request.cacheControl().onlyIfCached()) {
+                // We may serve the stale response, but not revalidate it.
+                return new CacheStrategy(null, candidate.cacheResponse);
+            }
 
             return candidate;
         }
@@ -292,6 +317,51 @@ public final class CacheStrategy {
                 return new CacheStrategy(null, builder.build());
             }
 
+            Request conditionalRequest = conditionalRequest();
+
+            // RFC 5861: serve the stale response now and revalidate it in the background.
+            if (responseCaching.staleWhileRevalidateSeconds() != -1
+                    && !responseCaching.noCache()
+                    && !responseCaching.mustRevalidate()
+                    && ageMillis + minFreshMillis < freshMillis
+                    + SECONDS.toMillis(responseCaching.staleWhileRevalidateSeconds())) {
+                Response staleResponse = cacheResponse.newBuilder()
+                        .addHeader("Warning", "110 HttpURLConnection \"Response is stale\"")
+                        .build();
+                // Revalidate on the network even if the response has no validators: the background
+                // call goes through this cache, which would otherwise serve it the same response.
+                Request revalidationRequest = (conditionalRequest != null
+                        ? conditionalRequest.newBuilder()
+                        : request.newBuilder())
+                        .cacheControl(CacheControl.FORCE_NETWORK)
+                        .build();
+                return new CacheStrategy(null, staleResponse, revalidationRequest, null);
+            }
+
+            // RFC 5861: keep the stale response to serve if the network fails. The request's
+            // directive overrides the response's.
+            int staleIfErrorSeconds = requestCaching.staleIfErrorSeconds() != -1
+                    ? requestCaching.staleIfErrorSeconds()
+                    : responseCaching.staleIfErrorSeconds();
+            Response staleIfErrorResponse = null;
+            if (staleIfErrorSeconds != -1
+                    && !responseCaching.mustRevalidate()
+                    && ageMillis < freshMillis + SECONDS.toMillis(staleIfErrorSeconds)) {
+                staleIfErrorResponse = cacheResponse;
+            }
+
+            if (conditionalRequest == null) {
+                // No condition! Make a regular request.
+                return new CacheStrategy(request, null, null, staleIfErrorResponse);
+            }
+            return new CacheStrategy(conditionalRequest, cacheResponse, null, staleIfErrorResponse);
+        }
+
+        /**
+         * Returns {@link #request} with a condition that lets the server skip transmitting the body
+         * if the cached response is still valid, or null if the cached response has no validator.
+         */
+        private @Nullable Request conditionalRequest() {
             // Find a condition to add to the request. If the condition is satisfied, the
             // response body
             // will not be transmitted.
@@ -309,16 +379,15 @@ public final class CacheStrategy {
                 conditionValue = servedDateString;
             } else {
                 //意味着无法与服务器发起比较，只能重新请求
-                return new CacheStrategy(request, null); // No condition! Make a regular request.
+                return null;
             }
             //todo 如果设置了 If-None-Match/If-Modified-Since 服务器是可能返回304(无修改)的,使用缓存的响应体
             Headers.Builder conditionalRequestHeaders = request.headers().newBuilder();
             Internal.instance.addLenient(conditionalRequestHeaders, conditionName, conditionValue);
 
-            Request conditionalRequest = request.newBuilder()
+            return request.newBuilder()
                     .headers(conditionalRequestHeaders.build())
                     .build();
-            return new CacheStrategy(conditionalRequest, cacheResponse);
         }
 
         /**
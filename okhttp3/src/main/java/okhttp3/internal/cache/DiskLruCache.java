@@ -21,16 +21,20 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.Flushable;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 import okhttp3.internal.Util;
@@ -79,6 +83,9 @@ import static okhttp3.internal.platform.Platform.WARN;
  * the time that {@link #get} was called. Updates and removals after the call do not impact ongoing
  * reads.
  *
+ * <p>An entry whose key is another entry's key followed by {@code -} and a suffix depends on that
+ * entry: when the entry is removed or evicted, its dependents are removed with it.
+ *
  * <p>This class is tolerant of some I/O errors. If files are missing from the filesystem, the
  * corresponding entries will be dropped from the cache. If an error occurs while writing a cache
  * value, the edit will fail silently. Callers should handle other problems by catching {@code
@@ -144,10 +151,15 @@ public final class DiskLruCache implements Closeable, Flushable {
   private final File journalFileBackup;
   private final int appVersion;
   private long maxSize;
+  private long mappedReadThreshold = -1L;
+  /** Chooses which entries to evict, or null to evict in {@link #lruEntries} order. */
+  private @Nullable EvictionPolicy evictionPolicy;
   final int valueCount;
   private long size = 0;
   BufferedSink journalWriter;
   final LinkedHashMap<String, Entry> lruEntries = new LinkedHashMap<>(0, 0.75f, true);
+  /** Keys of dependent entries, keyed by the key of the entry they depend on. */
+  private final Map<String, Set<String>> dependentKeys = new HashMap<>();
   int redundantOpCount;
   boolean hasJournalErrors;
 
@@ -227,6 +239,7 @@ public final class DiskLruCache implements Closeable, Flushable {
       try {
         readJournal();
         processJournal();
+        if (evictionPolicy != null) seedEvictionPolicy(evictionPolicy);
         initialized = true;
         return;
       } catch (IOException journalIsCorrupt) {
@@ -248,6 +261,13 @@ public final class DiskLruCache implements Closeable, Flushable {
     initialized = true;
   }
 
+  /** Reports every readable entry to {@code policy}, least recently used first. */
+  private void seedEvictionPolicy(EvictionPolicy policy) {
+    for (Entry entry : lruEntries.values()) {
+      if (entry.readable) policy.recordWrite(entry.key, entry.totalLength());
+    }
+  }
+
   /**
    * Create a cache which will reside in {@code directory}. This cache is lazily initialized on
    * first access and will be created if it does not exist.
@@ -373,6 +393,7 @@ public final class DiskLruCache implements Closeable, Flushable {
         for (int t = 0; t < valueCount; t++) {
           size += entry.lengths[t];
         }
+        addDependent(entry.key);
       } else {
         entry.currentEditor = null;
         for (int t = 0; t < valueCount; t++) {
@@ -443,6 +464,7 @@ public final class DiskLruCache implements Closeable, Flushable {
     Snapshot snapshot = entry.snapshot();
     if (snapshot == null) return null;
 
+    if (evictionPolicy != null) evictionPolicy.recordAccess(key);
     redundantOpCount++;
     journalWriter.writeUtf8(READ).writeByte(' ').writeUtf8(key).writeByte('\n');
     if (journalRebuildRequired()) {
@@ -493,6 +515,7 @@ public final class DiskLruCache implements Closeable, Flushable {
     if (entry == null) {
       entry = new Entry(key);
       lruEntries.put(key, entry);
+      addDependent(key);
     }
     Editor editor = new Editor(entry);
     entry.currentEditor = editor;
@@ -522,6 +545,40 @@ public final class DiskLruCache implements Closeable, Flushable {
     }
   }
 
+  /**
+   * Returns the minimum length of a value that is read by mapping its file into memory, or -1 if
+   * values are always read with streams.
+   */
+  public synchronized long getMappedReadThreshold() {
+    return mappedReadThreshold;
+  }
+
+  /**
+   * Read values of at least {@code mappedReadThreshold} bytes by mapping their files into memory
+   * rather than streaming them. Use -1 to always read values with streams. This only takes effect
+   * for snapshots created after this call, and only when this cache uses {@link
+   * FileSystem#SYSTEM}; other file systems don't expose files that can be mapped. Values are
+   * always streamed on Windows, which can't rename or delete files that are still mapped.
+   */
+  public synchronized void setMappedReadThreshold(long mappedReadThreshold) {
+    if (mappedReadThreshold < -1L) {
+      throw new IllegalArgumentException("mappedReadThreshold < -1: " + mappedReadThreshold);
+    }
+    this.mappedReadThreshold = mappedReadThreshold;
+  }
+
+  /**
+   * Evict entries using {@code evictionPolicy} instead of least-recently-used order. Use null to
+   * restore the default. The policy is seeded with the cache's current entries, least recently used
+   * first.
+   */
+  public synchronized void setEvictionPolicy(@Nullable EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = evictionPolicy;
+    if (initialized && evictionPolicy != null) {
+      seedEvictionPolicy(evictionPolicy);
+    }
+  }
+
   /**
    * Returns the number of bytes currently being used to store the values in this cache. This may be
    * greater than the max size if a background deletion is pending.
@@ -577,9 +634,11 @@ public final class DiskLruCache implements Closeable, Flushable {
       journalWriter.writeByte('\n');
       if (success) {
         entry.sequenceNumber = nextSequenceNumber++;
+        if (evictionPolicy != null) evictionPolicy.recordWrite(entry.key, entry.totalLength());
       }
     } else {
       lruEntries.remove(entry.key);
+      removeDependent(entry.key);
       journalWriter.writeUtf8(REMOVE).writeByte(' ');
       journalWriter.writeUtf8(entry.key);
       journalWriter.writeByte('\n');
@@ -633,6 +692,9 @@ public final class DiskLruCache implements Closeable, Flushable {
     redundantOpCount++;
     journalWriter.writeUtf8(REMOVE).writeByte(' ').writeUtf8(entry.key).writeByte('\n');
     lruEntries.remove(entry.key);
+    if (evictionPolicy != null) evictionPolicy.recordRemoval(entry.key);
+    removeDependent(entry.key);
+    removeDependentEntries(entry.key);
 
     if (journalRebuildRequired()) {
       executor.execute(cleanupRunnable);
@@ -641,6 +703,51 @@ public final class DiskLruCache implements Closeable, Flushable {
     return true;
   }
 
+  /**
+   * Drops the entries that depend on the entry for {@code key}, leaving that entry in place. Use
+   * this when the entry is replaced by a value its dependents no longer belong to.
+   */
+  public synchronized void removeDependents(String key) throws IOException {
+    initialize();
+
+    checkNotClosed();
+    validateKey(key);
+    removeDependentEntries(key);
+    if (size <= maxSize) mostRecentTrimFailed = false;
+  }
+
+  private void removeDependentEntries(String key) throws IOException {
+    Set<String> dependents = dependentKeys.remove(key);
+    if (dependents == null) return;
+    for (String dependent : dependents.toArray(new String[dependents.size()])) {
+      Entry entry = lruEntries.get(dependent);
+      if (entry != null) removeEntry(entry);
+    }
+  }
+
+  /** Records {@code key} as a dependent if it names the entry it depends on. */
+  private void addDependent(String key) {
+    int dash = key.indexOf('-');
+    if (dash <= 0) return;
+    String parent = key.substring(0, dash);
+    Set<String> dependents = dependentKeys.get(parent);
+    if (dependents == null) {
+      dependents = new LinkedHashSet<>();
+      dependentKeys.put(parent, dependents);
+    }
+    dependents.add(key);
+  }
+
+  private void removeDependent(String key) {
+    int dash = key.indexOf('-');
+    if (dash <= 0) return;
+    String parent = key.substring(0, dash);
+    Set<String> dependents = dependentKeys.get(parent);
+    if (dependents != null && dependents.remove(key) && dependents.isEmpty()) {
+      dependentKeys.remove(parent);
+    }
+  }
+
   /** Returns true if this cache has been closed. */
   public synchronized boolean isClosed() {
     return closed;
@@ -681,12 +788,25 @@ public final class DiskLruCache implements Closeable, Flushable {
 
   void trimToSize() throws IOException {
     while (size > maxSize) {
-      Entry toEvict = lruEntries.values().iterator().next();
-      removeEntry(toEvict);
+      removeEntry(nextToEvict());
     }
     mostRecentTrimFailed = false;
   }
 
+  /**
+   * Returns the entry the eviction policy picks, falling back to the least recently used entry if
+   * there is no policy or it picks an entry this cache doesn't have.
+   */
+  private Entry nextToEvict() {
+    if (evictionPolicy != null) {
+      String key = evictionPolicy.victim(maxSize);
+      Entry entry = key != null ? lruEntries.get(key) : null;
+      if (entry != null) return entry;
+      if (key != null) evictionPolicy.recordRemoval(key); // Forget a key we no longer have.
+    }
+    return lruEntries.values().iterator().next();
+  }
+
   /**
    * Closes the cache and deletes all of its stored values. This will delete all files in the cache
    * directory including files that weren't created by the cache.
@@ -704,16 +824,22 @@ public final class DiskLruCache implements Closeable, Flushable {
     initialize();
     // Copying for safe iteration.
     for (Entry entry : lruEntries.values().toArray(new Entry[lruEntries.size()])) {
-      removeEntry(entry);
+      if (lruEntries.containsKey(entry.key)) removeEntry(entry); // Dependents may be gone already.
     }
     mostRecentTrimFailed = false;
   }
 
+  /** Checks that {@code key} matches {@link #LEGAL_KEY_PATTERN} without running the regex. */
   private void validateKey(String key) {
-    Matcher matcher = LEGAL_KEY_PATTERN.matcher(key);
-    if (!matcher.matches()) {
+    int length = key.length();
+    boolean legal = length >= 1 && length <= 120;
+    for (int i = 0; legal && i < length; i++) {
+      char c = key.charAt(i);
+      legal = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+    if (!legal) {
       throw new IllegalArgumentException(
-          "keys must match regex [a-z0-9_-]{1,120}: \"" + key + "\"");
+          "keys must match regex " + LEGAL_KEY_PATTERN.pattern() + ": \"" + key + "\"");
     }
   }
 
@@ -1005,6 +1131,14 @@ public final class DiskLruCache implements Closeable, Flushable {
       }
     }
 
+    long totalLength() {
+      long result = 0L;
+      for (long length : lengths) {
+        result += length;
+      }
+      return result;
+    }
+
     /** Append space-prefixed lengths to {@code writer}. */
     void writeLengths(BufferedSink writer) throws IOException {
       for (long length : lengths) {
@@ -1028,7 +1162,7 @@ public final class DiskLruCache implements Closeable, Flushable {
       long[] lengths = this.lengths.clone(); // Defensive copy since these can be zeroed out.
       try {
         for (int i = 0; i < valueCount; i++) {
-          sources[i] = fileSystem.source(cleanFiles[i]);
+          sources[i] = openSource(cleanFiles[i], lengths[i]);
         }
         return new Snapshot(key, sequenceNumber, sources, lengths);
       } catch (FileNotFoundException e) {
@@ -1049,5 +1183,21 @@ public final class DiskLruCache implements Closeable, Flushable {
         return null;
       }
     }
+
+    /** Opens {@code file}, mapping it into memory if it's large enough and the file system allows. */
+    private Source openSource(File file, long length) throws FileNotFoundException {
+      if (mappedReadThreshold != -1L
+          && length >= mappedReadThreshold
+          && fileSystem == FileSystem.SYSTEM
+          && MappedFileSource.SUPPORTED) {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+          return new MappedFileSource(randomAccessFile.getChannel());
+        } catch (IOException e) {
+          Util.closeQuietly(randomAccessFile); // Fall back to a stream.
+        }
+      }
+      return fileSystem.source(file);
+    }
   }
 }
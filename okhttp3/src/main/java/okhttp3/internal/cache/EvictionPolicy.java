@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.cache;
+
+import javax.annotation.Nullable;
+
+/**
+ * Decides which entry a {@link DiskLruCache} removes when it holds more than its maximum size.
+ * The cache reports every read, write and removal to its policy, and asks the policy for a victim
+ * each time it needs to free space.
+ *
+ * <p>Policies are stateful and must not be shared between caches. The cache calls every method
+ * while holding its own lock, so implementations don't need to be thread safe.
+ */
+public abstract class EvictionPolicy {
+  /** Evicts the least recently used entry. This matches the cache's default behavior. */
+  public static EvictionPolicy lru() {
+    return new LruEvictionPolicy();
+  }
+
+  /**
+   * Evicts using GreedyDual-Size: each entry is prioritized by its recency and the inverse of its
+   * size, so one large entry is evicted before many small ones that were used around the same
+   * time. Use this to maximize the number of hits rather than the number of bytes served.
+   */
+  public static EvictionPolicy greedyDualSize() {
+    return new GreedyDualSizeEvictionPolicy();
+  }
+
+  /**
+   * Evicts using W-TinyLFU: new entries enter a small LRU window and must then win a frequency
+   * contest against the main region's victim to be retained. A compact count-min sketch tracks
+   * how often keys were used recently, so a single scan over many cold URLs doesn't flush entries
+   * that are used again and again.
+   */
+  public static EvictionPolicy windowTinyLfu() {
+    return new WindowTinyLfuEvictionPolicy();
+  }
+
+  /** Called when the entry for {@code key} is read. */
+  public abstract void recordAccess(String key);
+
+  /**
+   * Called when the entry for {@code key} is created or updated. {@code size} is the total number
+   * of bytes of its values.
+   */
+  public abstract void recordWrite(String key, long size);
+
+  /** Called when the entry for {@code key} is removed, either by eviction or explicitly. */
+  public abstract void recordRemoval(String key);
+
+  /**
+   * Returns the key of the entry to evict from a cache whose size exceeds {@code maxSize}, or null
+   * if this policy doesn't track any entries. The returned entry will be removed with a call to
+   * {@link #recordRemoval}.
+   */
+  public abstract @Nullable String victim(long maxSize);
+}
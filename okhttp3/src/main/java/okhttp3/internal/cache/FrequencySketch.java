@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.cache;
+
+/**
+ * A count-min sketch that estimates how often each key was used recently. Each key maps to four
+ * 4-bit counters packed into a single {@code long[]}, so the sketch costs 8 bytes per tracked entry
+ * and never stores keys. The minimum of the four counters is the frequency estimate.
+ *
+ * <p>To favor recent use over all-time popularity every counter is halved once the number of
+ * increments reaches ten times the table's capacity.
+ */
+final class FrequencySketch {
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  private long[] table = new long[1];
+  private int tableMask;
+  private int sampleSize = 10;
+  private int size;
+
+  /**
+   * Grows the sketch to track at least {@code maximumSize} keys accurately. The recorded
+   * frequencies are kept: a key's counters in a table twice as large are at either its old index
+   * or that index plus the old length, so copying the table into both halves preserves every
+   * estimate.
+   */
+  void ensureCapacity(long maximumSize) {
+    int maximum = (int) Math.min(maximumSize, Integer.MAX_VALUE >>> 1);
+    if (table.length >= maximum) return;
+
+    long[] newTable = new long[Integer.highestOneBit(maximum - 1) << 1];
+    for (int i = 0; i < newTable.length; i += table.length) {
+      System.arraycopy(table, 0, newTable, i, table.length);
+    }
+    table = newTable;
+    tableMask = table.length - 1;
+    sampleSize = 10 * maximum;
+    if (size >= sampleSize) {
+      reset();
+    }
+  }
+
+  /** Returns the estimated number of recent uses of the key with {@code hashCode}, up to 15. */
+  int frequency(int hashCode) {
+    int hash = spread(hashCode);
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /** Records a use of the key with {@code hashCode}. */
+  void increment(int hashCode) {
+    int hash = spread(hashCode);
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++size == sampleSize) {
+      reset();
+    }
+  }
+
+  /** Increments the {@code counter}th 4-bit counter of {@code table[index]} unless it's saturated. */
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    if ((table[index] & mask) != mask) {
+      table[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  /** Halves every counter, aging out keys that are no longer popular. */
+  private void reset() {
+    int oddCounters = 0;
+    for (int i = 0; i < table.length; i++) {
+      oddCounters += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (oddCounters >>> 2);
+  }
+
+  private int indexOf(int hash, int depth) {
+    long result = (hash + SEEDS[depth]) * SEEDS[depth];
+    result += result >>> 32;
+    return ((int) result) & tableMask;
+  }
+
+  /** Applies a supplemental hash so that keys with similar hash codes use different counters. */
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.cache;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+
+/**
+ * GreedyDual-Size with a uniform cost. Each entry's priority is {@code L + 1 / size}, where {@code
+ * L} is an inflation value that rises to the priority of each evicted entry. Entries that haven't
+ * been touched since {@code L} passed their priority are evicted first, smallest priority first.
+ */
+final class GreedyDualSizeEvictionPolicy extends EvictionPolicy {
+  private static final Comparator<Node> PRIORITY_ORDER = new Comparator<Node>() {
+    @Override public int compare(Node a, Node b) {
+      int byPriority = Double.compare(a.priority, b.priority);
+      if (byPriority != 0) return byPriority;
+      return Long.compare(a.sequence, b.sequence);
+    }
+  };
+
+  private final Map<String, Node> nodes = new HashMap<>();
+  private final TreeSet<Node> queue = new TreeSet<>(PRIORITY_ORDER);
+  private double inflation;
+  private long nextSequence;
+
+  @Override public void recordAccess(String key) {
+    Node node = nodes.get(key);
+    if (node != null) prioritize(node);
+  }
+
+  @Override public void recordWrite(String key, long size) {
+    Node node = nodes.get(key);
+    if (node == null) {
+      node = new Node(key);
+      nodes.put(key, node);
+    }
+    node.size = size;
+    prioritize(node);
+  }
+
+  @Override public void recordRemoval(String key) {
+    Node node = nodes.remove(key);
+    if (node != null) queue.remove(node);
+  }
+
+  @Override public @Nullable String victim(long maxSize) {
+    if (queue.isEmpty()) return null;
+    Node victim = queue.first();
+    inflation = victim.priority;
+    return victim.key;
+  }
+
+  private void prioritize(Node node) {
+    queue.remove(node);
+    node.priority = inflation + 1.0d / Math.max(node.size, 1L);
+    node.sequence = nextSequence++;
+    queue.add(node);
+  }
+
+  static final class Node {
+    final String key;
+    long size;
+    double priority;
+    long sequence;
+
+    Node(String key) {
+      this.key = key;
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.cache;
+
+import java.util.LinkedHashMap;
+import javax.annotation.Nullable;
+
+/** Evicts the entry that was read or written least recently. */
+final class LruEvictionPolicy extends EvictionPolicy {
+  private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(0, 0.75f, true);
+
+  @Override public void recordAccess(String key) {
+    sizes.get(key);
+  }
+
+  @Override public void recordWrite(String key, long size) {
+    sizes.put(key, size);
+  }
+
+  @Override public void recordRemoval(String key) {
+    sizes.remove(key);
+  }
+
+  @Override public @Nullable String victim(long maxSize) {
+    return sizes.isEmpty() ? null : sizes.keySet().iterator().next();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.cache;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import okio.Buffer;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * A source that reads a file by mapping it into memory. Reads copy directly from the mapped pages
+ * into the sink's segments, skipping the intermediate read system call and heap array that a
+ * stream-based file source needs for each segment.
+ *
+ * <p>Large files are mapped in windows of at most {@link #MAX_WINDOW_SIZE} bytes. Mappings are
+ * released when they are garbage collected, not when this source is closed; closing only releases
+ * the underlying file channel.
+ */
+final class MappedFileSource implements Source {
+  static final long MAX_WINDOW_SIZE = 64L * 1024L * 1024L;
+
+  /**
+   * True if files can be renamed and deleted while they're mapped. Windows refuses to, and since
+   * mappings are only released by the garbage collector, the cache couldn't replace or evict an
+   * entry that was recently read. Files are always streamed there.
+   */
+  static final boolean SUPPORTED = !System.getProperty("os.name", "").startsWith("Windows");
+
+  private final FileChannel channel;
+  private final long size;
+
+  /** The current mapped window, or null if no bytes have been mapped yet. */
+  private MappedByteBuffer window;
+
+  /** The file offset of the first byte in {@link #window}. */
+  private long windowOffset;
+
+  private boolean closed;
+
+  MappedFileSource(FileChannel channel) throws IOException {
+    this.channel = channel;
+    this.size = channel.size();
+  }
+
+  @Override public long read(Buffer sink, long byteCount) throws IOException {
+    if (byteCount < 0) throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+    if (closed) throw new IllegalStateException("closed");
+    if (byteCount == 0) return 0;
+
+    if (window == null || !window.hasRemaining()) {
+      long offset = window != null ? windowOffset + window.capacity() : 0L;
+      if (offset >= size) return -1;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+          Math.min(size - offset, MAX_WINDOW_SIZE));
+      windowOffset = offset;
+    }
+
+    int toRead = (int) Math.min(byteCount, window.remaining());
+    int limit = window.limit();
+    window.limit(window.position() + toRead);
+    try {
+      sink.write(window);
+    } finally {
+      window.limit(limit);
+    }
+    return toRead;
+  }
+
+  @Override public Timeout timeout() {
+    return Timeout.NONE;
+  }
+
+  @Override public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    window = null;
+    channel.close();
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.cache;
+
+import okhttp3.Response;
+
+/**
+ * Deduplicates background revalidations of stale cached responses, so that a popular stale entry
+ * is refreshed by one call at a time. Caches may implement this in addition to {@link
+ * InternalCache}; stale responses from caches that don't are revalidated without deduplication.
+ */
+public interface RevalidationTracker {
+  /**
+   * Returns true if the caller should revalidate {@code cached} in the background, or false if
+   * that is already underway. Revalidations are deduplicated per stored response, so different
+   * variants of the same URL are refreshed independently. Callers that get true must call {@link
+   * #finishRevalidation} when they're done.
+   */
+  boolean startRevalidation(Response cached);
+
+  /** Track the end of a background revalidation started with {@link #startRevalidation}. */
+  void finishRevalidation(Response cached);
+}
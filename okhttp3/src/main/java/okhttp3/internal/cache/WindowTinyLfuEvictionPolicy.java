@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * W-TinyLFU. New entries enter a small LRU admission window. Once the window is full its oldest
+ * entry competes with the main region's victim, and whichever was used more often according to a
+ * {@link FrequencySketch} is retained. The main region is a segmented LRU: entries start on
+ * probation and are promoted to the protected segment when they are read again.
+ *
+ * <p>Sizes are in bytes, so the window and segments are bounded by a share of the cache's maximum
+ * size rather than by an entry count.
+ */
+final class WindowTinyLfuEvictionPolicy extends EvictionPolicy {
+  /** The share of the maximum size used by the admission window, in percent. */
+  static final int WINDOW_PERCENT = 1;
+
+  /** The share of the main region reserved for entries that were read after admission. */
+  static final int PROTECTED_PERCENT = 80;
+
+  private final FrequencySketch sketch = new FrequencySketch();
+  private final LinkedHashMap<String, Long> window = new LinkedHashMap<>(0, 0.75f, true);
+  private final LinkedHashMap<String, Long> probation = new LinkedHashMap<>(0, 0.75f, true);
+  private final LinkedHashMap<String, Long> protectedSegment = new LinkedHashMap<>(0, 0.75f, true);
+  private long windowSize;
+  private long probationSize;
+  private long protectedSize;
+
+  @Override public void recordAccess(String key) {
+    sketch.increment(key.hashCode());
+    if (window.get(key) != null) return;
+
+    Long size = probation.remove(key);
+    if (size != null) {
+      probationSize -= size;
+      protectedSegment.put(key, size);
+      protectedSize += size;
+      return;
+    }
+
+    protectedSegment.get(key);
+  }
+
+  @Override public void recordWrite(String key, long size) {
+    sketch.ensureCapacity(window.size() + probation.size() + protectedSegment.size() + 1);
+    sketch.increment(key.hashCode());
+
+    Long previous;
+    if ((previous = probation.get(key)) != null) {
+      probation.put(key, size);
+      probationSize += size - previous;
+    } else if ((previous = protectedSegment.get(key)) != null) {
+      protectedSegment.put(key, size);
+      protectedSize += size - previous;
+    } else {
+      previous = window.put(key, size);
+      windowSize += previous != null ? size - previous : size;
+    }
+  }
+
+  @Override public void recordRemoval(String key) {
+    Long size;
+    if ((size = window.remove(key)) != null) {
+      windowSize -= size;
+    } else if ((size = probation.remove(key)) != null) {
+      probationSize -= size;
+    } else if ((size = protectedSegment.remove(key)) != null) {
+      protectedSize -= size;
+    }
+  }
+
+  @Override public @Nullable String victim(long maxSize) {
+    long windowMax = Math.max(1L, maxSize * WINDOW_PERCENT / 100);
+    long mainMax = maxSize - windowMax;
+    long protectedMax = mainMax * PROTECTED_PERCENT / 100;
+
+    // Demote protected entries that no longer fit to the most-recent end of probation.
+    while (protectedSize > protectedMax) {
+      String key = protectedSegment.keySet().iterator().next();
+      long size = protectedSegment.remove(key);
+      protectedSize -= size;
+      probation.put(key, size);
+      probationSize += size;
+    }
+
+    // While the main region has room, admit the window's overflow without a contest. Entries are
+    // read through iterators because get() would reorder these access-ordered maps.
+    while (windowSize > windowMax) {
+      Map.Entry<String, Long> eldest = window.entrySet().iterator().next();
+      if (probationSize + protectedSize + eldest.getValue() > mainMax) break;
+      admit(eldest.getKey(), eldest.getValue());
+    }
+
+    Map.Entry<String, Long> candidate = windowSize > windowMax ? first(window) : null;
+    Map.Entry<String, Long> mainVictim = !probation.isEmpty()
+        ? first(probation)
+        : first(protectedSegment);
+    if (candidate == null) {
+      if (mainVictim != null) return mainVictim.getKey();
+      Map.Entry<String, Long> eldest = first(window);
+      return eldest != null ? eldest.getKey() : null;
+    }
+    if (mainVictim == null) return candidate.getKey();
+
+    String candidateKey = candidate.getKey();
+    String mainVictimKey = mainVictim.getKey();
+    if (sketch.frequency(candidateKey.hashCode()) > sketch.frequency(mainVictimKey.hashCode())) {
+      admit(candidateKey, candidate.getValue());
+      return mainVictimKey;
+    }
+    return candidateKey;
+  }
+
+  /** Moves {@code key} from the window to the most-recent end of probation. */
+  private void admit(String key, long size) {
+    window.remove(key);
+    windowSize -= size;
+    probation.put(key, size);
+    probationSize += size;
+  }
+
+  /** Returns the least-recently used entry of {@code segment} without reordering it. */
+  private static @Nullable Map.Entry<String, Long> first(LinkedHashMap<String, Long> segment) {
+    return segment.isEmpty() ? null : segment.entrySet().iterator().next();
+  }
+}
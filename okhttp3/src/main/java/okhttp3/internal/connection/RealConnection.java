@@ -51,12 +51,14 @@ import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.Route;
+import okhttp3.TlsSessionCache;
 import okhttp3.internal.Internal;
 import okhttp3.internal.Util;
 import okhttp3.internal.Version;
 import okhttp3.internal.http.HttpCodec;
 import okhttp3.internal.http.HttpHeaders;
 import okhttp3.internal.http1.Http1Codec;
+import okhttp3.internal.http1.Http1Pipeline;
 import okhttp3.internal.http2.ErrorCode;
 import okhttp3.internal.http2.Http2Codec;
 import okhttp3.internal.http2.Http2Connection;
@@ -114,6 +116,12 @@ public final class RealConnection extends Http2Connection.Listener implements Co
      */
     public int allocationLimit = 1;
 
+    /**
+     * The exchanges in flight on this HTTP/1.1 connection if it pipelines requests, or null if it
+     * has only carried exchanges that aren't pipelined.
+     */
+    private Http1Pipeline pipeline;
+
     /**
      * Current streams carried by this connection.
      */
@@ -138,7 +146,8 @@ public final class RealConnection extends Http2Connection.Listener implements Co
     }
 
     public void connect(int connectTimeout, int readTimeout, int writeTimeout,
-                        int pingIntervalMillis, boolean connectionRetryEnabled, Call call,
+                        int pingIntervalMillis, boolean connectionRetryEnabled,
+                        @Nullable TlsSessionCache tlsSessionCache, Call call,
                         EventListener eventListener) {
         if (protocol != null) throw new IllegalStateException("already connected");
 
@@ -173,7 +182,8 @@ public final class RealConnection extends Http2Connection.Listener implements Co
                     //todo 创建socket连接
                     connectSocket(connectTimeout, readTimeout, call, eventListener);
                 }
-                establishProtocol(connectionSpecSelector, pingIntervalMillis, call, eventListener);
+                establishProtocol(connectionSpecSelector, pingIntervalMillis, tlsSessionCache,
+                        call, eventListener);
                 eventListener.connectEnd(call, route.socketAddress(), route.proxy(), protocol);
                 break;
             } catch (IOException e) {
@@ -281,7 +291,8 @@ public final class RealConnection extends Http2Connection.Listener implements Co
     }
 
     private void establishProtocol(ConnectionSpecSelector connectionSpecSelector,
-                                   int pingIntervalMillis, Call call,
+                                   int pingIntervalMillis,
+                                   @Nullable TlsSessionCache tlsSessionCache, Call call,
                                    EventListener eventListener) throws IOException {
         if (route.address().sslSocketFactory() == null) {
             protocol = Protocol.HTTP_1_1;
@@ -290,8 +301,10 @@ public final class RealConnection extends Http2Connection.Listener implements Co
         }
 
         eventListener.secureConnectStart(call);
-        connectTls(connectionSpecSelector);
-        eventListener.secureConnectEnd(call, handshake);
+        long handshakeStartNanos = System.nanoTime();
+        boolean resumed = connectTls(connectionSpecSelector, tlsSessionCache);
+        eventListener.secureConnectEnd(call, handshake, resumed,
+                System.nanoTime() - handshakeStartNanos);
 
         if (protocol == Protocol.HTTP_2) {
             socket.setSoTimeout(0); // HTTP/2 connection timeouts are set per-stream.
@@ -304,7 +317,9 @@ public final class RealConnection extends Http2Connection.Listener implements Co
         }
     }
 
-    private void connectTls(ConnectionSpecSelector connectionSpecSelector) throws IOException {
+    /** Returns true if the handshake resumed a previous TLS session. */
+    private boolean connectTls(ConnectionSpecSelector connectionSpecSelector,
+                               @Nullable TlsSessionCache tlsSessionCache) throws IOException {
         Address address = route.address();
         SSLSocketFactory sslSocketFactory = address.sslSocketFactory();
         boolean success = false;
@@ -322,6 +337,7 @@ public final class RealConnection extends Http2Connection.Listener implements Co
             }
 
             // Force handshake. This can throw!
+            long handshakeStartMillis = System.currentTimeMillis();
             sslSocket.startHandshake();
             // block for session establishment
             SSLSession sslSocketSession = sslSocket.getSession();
@@ -357,6 +373,8 @@ public final class RealConnection extends Http2Connection.Listener implements Co
                     ? Protocol.get(maybeProtocol)
                     : Protocol.HTTP_1_1;
             success = true;
+            return Internal.instance.sessionEstablished(tlsSessionCache, address, connectionSpec,
+                    sslSocketSession, handshakeStartMillis);
         } catch (AssertionError e) {
             if (Util.isAndroidGetsocknameError(e)) throw new IOException(e);
             throw e;
@@ -505,6 +523,17 @@ public final class RealConnection extends Http2Connection.Listener implements Co
         return true; // The caller's address can be carried by this connection.
     }
 
+    /**
+     * Returns true if this HTTP/1.1 connection can carry {@code streamAllocation}'s exchange by
+     * pipelining it behind the exchanges that are already in flight.
+     */
+    public boolean isEligibleForPipelining(Address address, StreamAllocation streamAllocation) {
+        if (pipeline == null || noNewStreams || !streamAllocation.pipelined) return false;
+        if (!pipeline.acceptsExchange(allocations.size())) return false;
+        if (!Internal.instance.equalsNonHost(this.route.address(), address)) return false;
+        return address.url().host().equals(this.route().address().url().host());
+    }
+
     public boolean supportsUrl(HttpUrl url) {
         if (url.port() != route.address().url().port()) {
             return false; // Port mismatch.
@@ -524,10 +553,26 @@ public final class RealConnection extends Http2Connection.Listener implements Co
         if (http2Connection != null) {
             return new Http2Codec(client, chain, streamAllocation, http2Connection);
         } else {
-            socket.setSoTimeout(chain.readTimeoutMillis());
-            source.timeout().timeout(chain.readTimeoutMillis(), MILLISECONDS);
-            sink.timeout().timeout(chain.writeTimeoutMillis(), MILLISECONDS);
-            return new Http1Codec(client, streamAllocation, source, sink);
+            Http1Pipeline pipeline;
+            synchronized (connectionPool) {
+                if (this.pipeline == null && streamAllocation.pipelined) {
+                    this.pipeline = new Http1Pipeline(client.maxPipelinedRequests());
+                }
+                pipeline = this.pipeline;
+            }
+            // Pipelined exchanges share the socket. Set its timeouts only when no other exchange is
+            // in flight, so that those exchanges keep the timeouts they started with. Each
+            // pipelined exchange applies its own timeouts to the source and sink when it takes its
+            // turn, so the socket itself doesn't time out reads.
+            if (!hasOtherExchangesInFlight()) {
+                socket.setSoTimeout(pipeline != null ? 0 : chain.readTimeoutMillis());
+                source.timeout().timeout(chain.readTimeoutMillis(), MILLISECONDS);
+                sink.timeout().timeout(chain.writeTimeoutMillis(), MILLISECONDS);
+            }
+            return new Http1Codec(client, streamAllocation, source, sink, pipeline,
+                    streamAllocation.pipelined,
+                    MILLISECONDS.toNanos(chain.readTimeoutMillis()),
+                    MILLISECONDS.toNanos(chain.writeTimeoutMillis()));
         }
     }
 
@@ -555,6 +600,16 @@ public final class RealConnection extends Http2Connection.Listener implements Co
         return socket;
     }
 
+    /**
+     * Returns true if exchanges other than the one being started are in flight on this HTTP/1.1
+     * connection. This is only possible if it pipelines requests.
+     */
+    private boolean hasOtherExchangesInFlight() {
+        synchronized (connectionPool) {
+            return pipeline != null && allocations.size() > 1;
+        }
+    }
+
     /**
      * Returns true if this connection is ready to host new streams.
      */
@@ -568,7 +623,9 @@ public final class RealConnection extends Http2Connection.Listener implements Co
             return !http2Connection.isShutdown();
         }
 
-        if (doExtensiveChecks) {
+        // Probing the source would steal bytes from a pipelined exchange that is reading it, and
+        // that exchange's progress shows the connection is alive anyway.
+        if (doExtensiveChecks && !hasOtherExchangesInFlight()) {
             try {
                 int readTimeout = socket.getSoTimeout();
                 try {
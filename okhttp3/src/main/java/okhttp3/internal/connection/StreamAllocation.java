@@ -20,6 +20,7 @@ import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.net.Socket;
 import java.util.List;
+import javax.annotation.Nullable;
 
 import okhttp3.Address;
 import okhttp3.Call;
@@ -28,7 +29,9 @@ import okhttp3.ConnectionPool;
 import okhttp3.EventListener;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import okhttp3.Route;
+import okhttp3.TlsSessionCache;
 import okhttp3.internal.Internal;
 import okhttp3.internal.Util;
 import okhttp3.internal.http.HttpCodec;
@@ -93,6 +96,12 @@ public final class StreamAllocation {
     private boolean canceled;
     private HttpCodec codec;
 
+    /** True if the current exchange may be pipelined with other exchanges on its connection. */
+    boolean pipelined;
+
+    /** Tracks the TLS sessions of this allocation's connections, or null if they aren't. */
+    private @Nullable TlsSessionCache tlsSessionCache;
+
     public StreamAllocation(ConnectionPool connectionPool, Address address, Call call,
                             EventListener eventListener, Object callStackTrace) {
         this.connectionPool = connectionPool;
@@ -110,6 +119,10 @@ public final class StreamAllocation {
         int writeTimeout = chain.writeTimeoutMillis();
         int pingIntervalMillis = client.pingIntervalMillis();
         boolean connectionRetryEnabled = client.retryOnConnectionFailure();
+        // Waits for a turn on a pipeline are bounded by the exchange's timeouts, so pipeline only
+        // exchanges that have them.
+        pipelined = isPipelinable(client, chain.request()) && readTimeout != 0 && writeTimeout != 0;
+        tlsSessionCache = client.tlsSessionCache();
 
         try {
             //todo  找到一个健康的连接
@@ -128,6 +141,18 @@ public final class StreamAllocation {
         }
     }
 
+    /**
+     * Returns true if {@code request} may be pipelined: it must be a GET or HEAD without a body to
+     * one of the client's pipelined hosts. Such requests are idempotent and so can be safely
+     * retried on another connection if the pipeline fails.
+     */
+    private static boolean isPipelinable(OkHttpClient client, Request request) {
+        if (client.pipelinedHosts().isEmpty()) return false;
+        if (!request.method().equals("GET") && !request.method().equals("HEAD")) return false;
+        if (request.body() != null || request.header("Upgrade") != null) return false;
+        return client.pipelinedHosts().contains(request.url().host());
+    }
+
     /**
      * Finds a connection and returns it if it is healthy. If it is unhealthy the process is
      * repeated
@@ -276,7 +301,7 @@ public final class StreamAllocation {
         // Do TCP + TLS handshakes. This is a blocking operation.
         //todo 实际上就是创建socket连接，但是要注意的是如果存在http代理的情况
         result.connect(connectTimeout, readTimeout, writeTimeout, pingIntervalMillis,
-                connectionRetryEnabled, call, eventListener);
+                connectionRetryEnabled, tlsSessionCache, call, eventListener);
         // TODO: 连接完后移除路由
         routeDatabase().connected(result.route());
 
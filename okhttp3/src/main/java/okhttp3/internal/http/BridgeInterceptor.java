@@ -17,20 +17,27 @@
 package okhttp3.internal.http;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import javax.annotation.Nullable;
 
+import okhttp3.ContentDecoder;
+import okhttp3.ContentEncoder;
 import okhttp3.Cookie;
 import okhttp3.CookieJar;
 import okhttp3.FormBody;
 import okhttp3.Headers;
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.internal.Internal;
 import okhttp3.internal.Version;
-import okio.GzipSource;
 import okio.Okio;
+import okio.Source;
 
 import static okhttp3.internal.Util.hostHeader;
 
@@ -42,9 +49,41 @@ import static okhttp3.internal.Util.hostHeader;
  */
 public final class BridgeInterceptor implements Interceptor {
     private final CookieJar cookieJar;
+    private final DefaultHeaders defaultHeaders;
+    private final List<ContentDecoder> contentDecoders;
+    private final @Nullable ContentEncoder requestEncoder;
+    private final long requestCompressionMinimumSize;
+
+    /** The Accept-Encoding header value advertising {@link #contentDecoders}, or null for none. */
+    private final @Nullable String acceptEncoding;
 
     public BridgeInterceptor(CookieJar cookieJar) {
+        this(cookieJar, DefaultHeaders.NONE, Collections.singletonList(ContentDecoder.GZIP),
+                null, 0L);
+    }
+
+    public BridgeInterceptor(OkHttpClient client) {
+        this(client.cookieJar(), Internal.instance.defaultHeaders(client),
+                client.contentDecoders(), client.requestEncoder(),
+                client.requestCompressionMinimumSize());
+    }
+
+    private BridgeInterceptor(CookieJar cookieJar, DefaultHeaders defaultHeaders,
+                              List<ContentDecoder> contentDecoders,
+                              @Nullable ContentEncoder requestEncoder,
+                              long requestCompressionMinimumSize) {
         this.cookieJar = cookieJar;
+        this.defaultHeaders = defaultHeaders;
+        this.contentDecoders = contentDecoders;
+        this.requestEncoder = requestEncoder;
+        this.requestCompressionMinimumSize = requestCompressionMinimumSize;
+
+        StringBuilder acceptEncoding = new StringBuilder();
+        for (int i = 0, size = contentDecoders.size(); i < size; i++) {
+            if (i > 0) acceptEncoding.append(", ");
+            acceptEncoding.append(contentDecoders.get(i).encoding());
+        }
+        this.acceptEncoding = acceptEncoding.length() > 0 ? acceptEncoding.toString() : null;
     }
 
     /**
@@ -60,6 +99,13 @@ public final class BridgeInterceptor implements Interceptor {
 
         RequestBody body = userRequest.body();
         if (body != null) {
+            body = compress(userRequest, body);
+            if (body instanceof EncodedRequestBody) {
+                requestBuilder.method(userRequest.method(), body);
+                requestBuilder.header("Content-Encoding",
+                        ((EncodedRequestBody) body).encoder().encoding());
+            }
+
             MediaType contentType = body.contentType();
             if (contentType != null) {
                 requestBuilder.header("Content-Type", contentType.toString());
@@ -75,6 +121,7 @@ public final class BridgeInterceptor implements Interceptor {
             }
         }
 
+        String host = userRequest.url().host();
         if (userRequest.header("Host") == null) {
             requestBuilder.header("Host", hostHeader(userRequest.url(), false));
         }
@@ -83,13 +130,16 @@ public final class BridgeInterceptor implements Interceptor {
             requestBuilder.header("Connection", "Keep-Alive");
         }
 
-        // If we add an "Accept-Encoding: gzip" header field we're responsible for also
-      // decompressing
-        // the transfer stream.
-        boolean transparentGzip = false;
+        // If we add an "Accept-Encoding" header field we're responsible for also decoding the
+        // transfer stream.
+        boolean transparentDecoding = false;
         if (userRequest.header("Accept-Encoding") == null && userRequest.header("Range") == null) {
-            transparentGzip = true;
-            requestBuilder.header("Accept-Encoding", "gzip");
+            if (defaultHeaders.get(host, "Accept-Encoding") != null) {
+                transparentDecoding = true;
+            } else if (acceptEncoding != null) {
+                transparentDecoding = true;
+                requestBuilder.header("Accept-Encoding", acceptEncoding);
+            }
         }
 
         List<Cookie> cookies = cookieJar.loadForRequest(userRequest.url());
@@ -97,21 +147,26 @@ public final class BridgeInterceptor implements Interceptor {
             requestBuilder.header("Cookie", cookieHeader(cookies));
         }
 
-        if (userRequest.header("User-Agent") == null) {
+        if (userRequest.header("User-Agent") == null
+                && defaultHeaders.get(host, "User-Agent") == null) {
             requestBuilder.header("User-Agent", Version.userAgent());
         }
 
-        Response networkResponse = chain.proceed(requestBuilder.build());
+        // Client defaults go last so that the codec can write them from their encoded form.
+        Request networkRequest = defaultHeaders.apply(requestBuilder.build());
+        Response networkResponse = chain.proceed(networkRequest);
 
         HttpHeaders.receiveHeaders(cookieJar, userRequest.url(), networkResponse.headers());
 
         Response.Builder responseBuilder = networkResponse.newBuilder()
                 .request(userRequest);
 
-        if (transparentGzip
-                && "gzip".equalsIgnoreCase(networkResponse.header("Content-Encoding"))
-                && HttpHeaders.hasBody(networkResponse)) {
-            GzipSource responseBody = new GzipSource(networkResponse.body().source());
+        String contentEncoding = networkResponse.header("Content-Encoding");
+        Source responseBody = transparentDecoding && contentEncoding != null
+                && HttpHeaders.hasBody(networkResponse)
+                ? decode(contentEncoding, networkResponse.body().source())
+                : null;
+        if (responseBody != null) {
             Headers strippedHeaders = networkResponse.headers().newBuilder()
                     .removeAll("Content-Encoding")
                     .removeAll("Content-Length")
@@ -124,6 +179,55 @@ public final class BridgeInterceptor implements Interceptor {
         return responseBuilder.build();
     }
 
+    /**
+     * Returns {@code body}, compressed with the client's request encoder if it is configured and
+     * this request doesn't have its own content coding.
+     */
+    private RequestBody compress(Request request, RequestBody body) throws IOException {
+        if (requestEncoder == null
+                || body instanceof EncodedRequestBody
+                || request.header("Content-Encoding") != null) {
+            return body;
+        }
+        long contentLength = body.contentLength();
+        if (contentLength != -1L && contentLength < requestCompressionMinimumSize) return body;
+        return new EncodedRequestBody(body, requestEncoder);
+    }
+
+    /**
+     * Returns a source that decodes {@code source} according to {@code contentEncoding}, or null if
+     * it uses a content coding that this client can't decode. Codings are listed in the order they
+     * were applied, so they're decoded from last to first.
+     */
+    private @Nullable Source decode(String contentEncoding, Source source) throws IOException {
+        List<ContentDecoder> decoders = new ArrayList<>(1);
+        for (int start = 0, length = contentEncoding.length(); start < length; ) {
+            int end = contentEncoding.indexOf(',', start);
+            if (end == -1) end = length;
+            String encoding = contentEncoding.substring(start, end).trim();
+            start = end + 1;
+            if (encoding.isEmpty() || encoding.equalsIgnoreCase("identity")) continue;
+
+            ContentDecoder decoder = contentDecoder(encoding);
+            if (decoder == null) return null;
+            decoders.add(decoder);
+        }
+        if (decoders.isEmpty()) return null;
+
+        for (int i = decoders.size() - 1; i >= 0; i--) {
+            source = decoders.get(i).decode(source);
+        }
+        return source;
+    }
+
+    private @Nullable ContentDecoder contentDecoder(String encoding) {
+        for (int i = 0, size = contentDecoders.size(); i < size; i++) {
+            ContentDecoder decoder = contentDecoders.get(i);
+            if (encoding.equalsIgnoreCase(decoder.encoding())) return decoder;
+        }
+        return null;
+    }
+
     /**
      * Returns a 'Cookie' HTTP request header with all cookies, like {@code a=b; c=d}.
      */
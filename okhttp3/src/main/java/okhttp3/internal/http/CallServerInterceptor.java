@@ -73,14 +73,35 @@ public final class CallServerInterceptor implements Interceptor {
                 // Write the request body if the "Expect: 100-continue" expectation was met.
                 realChain.eventListener().requestBodyStart(realChain.call());
                 long contentLength = request.body().contentLength();
-                CountingSink requestBodyOut =
-                        new CountingSink(httpCodec.createRequestBody(request, contentLength));
-                BufferedSink bufferedRequestBody = Okio.buffer(requestBodyOut);
-                //todo：写入请求体
-                request.body().writeTo(bufferedRequestBody);
-                bufferedRequestBody.close();
-                realChain.eventListener()
-                        .requestBodyEnd(realChain.call(), requestBodyOut.successfulCount);
+                Sink requestBodySink = httpCodec.createRequestBody(request, contentLength);
+                long bytesWritten;
+                long uncompressedBytesWritten = -1L;
+                if (request.body() instanceof FileRequestBody
+                        && requestBodySink instanceof FileTransferSink
+                        && ((FileTransferSink) requestBodySink).supportsFileTransfer()) {
+                    // Let the kernel copy the file to the socket.
+                    bytesWritten = ((FileRequestBody) request.body())
+                            .transferTo((FileTransferSink) requestBodySink, contentLength);
+                    requestBodySink.close();
+                } else {
+                    CountingSink requestBodyOut = new CountingSink(requestBodySink);
+                    BufferedSink bufferedRequestBody = Okio.buffer(requestBodyOut);
+                    //todo：写入请求体
+                    if (request.body() instanceof EncodedRequestBody) {
+                        uncompressedBytesWritten = ((EncodedRequestBody) request.body())
+                                .writeEncoded(bufferedRequestBody);
+                    } else {
+                        request.body().writeTo(bufferedRequestBody);
+                    }
+                    bufferedRequestBody.close();
+                    bytesWritten = requestBodyOut.successfulCount;
+                }
+                if (uncompressedBytesWritten != -1L) {
+                    realChain.eventListener().requestBodyEnd(
+                            realChain.call(), bytesWritten, uncompressedBytesWritten);
+                } else {
+                    realChain.eventListener().requestBodyEnd(realChain.call(), bytesWritten);
+                }
             } else if (!connection.isMultiplexed()) {
                 // If the "Expect: 100-continue" expectation wasn't met, prevent the HTTP/1
               // connection
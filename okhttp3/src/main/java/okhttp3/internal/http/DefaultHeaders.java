@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.http;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import okhttp3.Headers;
+import okhttp3.Request;
+import okhttp3.internal.Util;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+
+/**
+ * Request headers that a client adds to every request, or to every request to a particular host.
+ * The bridge interceptor appends them to each network request, so they're visible to network
+ * interceptors, event listeners and the cache. For HTTP/1.1 each header set is also encoded once;
+ * when a request ends with that set its bytes are written with a single copy into the sink.
+ *
+ * <p>A header that the request defines itself replaces the default header of the same name. Headers
+ * that frame the message or manage the connection can't have defaults.
+ */
+public final class DefaultHeaders {
+  public static final DefaultHeaders NONE = new DefaultHeaders(
+      Util.EMPTY_HEADERS, Collections.<String, Headers>emptyMap());
+
+  private final Headers headers;
+  private final Map<String, Headers> hostHeaders;
+  private final HeaderSet defaultSet;
+  private final Map<String, HeaderSet> hostSets = new LinkedHashMap<>();
+
+  public DefaultHeaders(Headers headers, Map<String, Headers> hostHeaders) {
+    this.headers = headers;
+    this.hostHeaders = Collections.unmodifiableMap(new LinkedHashMap<>(hostHeaders));
+    this.defaultSet = new HeaderSet(headers);
+    for (Map.Entry<String, Headers> entry : hostHeaders.entrySet()) {
+      // Host headers take precedence over the client's headers of the same name.
+      Headers.Builder merged = entry.getValue().newBuilder();
+      for (int i = 0, size = headers.size(); i < size; i++) {
+        if (entry.getValue().get(headers.name(i)) == null) {
+          merged.add(headers.name(i), headers.value(i));
+        }
+      }
+      hostSets.put(entry.getKey(), new HeaderSet(merged.build()));
+    }
+  }
+
+  /** Returns the headers added to all requests. */
+  public Headers headers() {
+    return headers;
+  }
+
+  /** Returns the headers added to requests to particular hosts, keyed by host. */
+  public Map<String, Headers> hostHeaders() {
+    return hostHeaders;
+  }
+
+  /** Returns the headers added to requests to {@code host}. */
+  public Headers headers(String host) {
+    return headerSet(host).headers;
+  }
+
+  /** Returns the default value of the header {@code name} for requests to {@code host}. */
+  public @Nullable String get(String host, String name) {
+    return headerSet(host).headers.get(name);
+  }
+
+  /**
+   * Returns {@code request} with the default headers for its host that it doesn't define appended.
+   * A default {@code Accept-Encoding} isn't added to range requests: the range would select bytes
+   * of the encoded representation, which can't be decoded on their own.
+   */
+  public Request apply(Request request) {
+    Headers defaults = headerSet(request.url().host()).headers;
+    if (defaults.size() == 0) return request;
+
+    Headers requestHeaders = request.headers();
+    boolean range = requestHeaders.get("Range") != null;
+    Headers.Builder result = null;
+    for (int i = 0, size = defaults.size(); i < size; i++) {
+      String name = defaults.name(i);
+      if (requestHeaders.get(name) != null) continue;
+      if (range && name.equalsIgnoreCase("Accept-Encoding")) continue;
+      if (result == null) result = requestHeaders.newBuilder();
+      result.add(name, defaults.value(i));
+    }
+    return result != null ? request.newBuilder().headers(result.build()).build() : request;
+  }
+
+  /**
+   * Writes {@code headers} as HTTP/1.1 header lines. If they end with all of the default headers
+   * for {@code host}, as they do unless a request overrides one, those are written from their
+   * encoded form.
+   */
+  public void writeTo(BufferedSink sink, String host, Headers headers) throws IOException {
+    HeaderSet headerSet = headerSet(host);
+    int defaultsStart = headers.size() - headerSet.headers.size();
+    boolean encoded = headerSet.headers.size() > 0
+        && defaultsStart >= 0
+        && endsWith(headers, defaultsStart, headerSet.headers);
+
+    for (int i = 0, end = encoded ? defaultsStart : headers.size(); i < end; i++) {
+      sink.writeUtf8(headers.name(i))
+          .writeUtf8(": ")
+          .writeUtf8(headers.value(i))
+          .writeUtf8("\r\n");
+    }
+    if (encoded) sink.write(headerSet.encoded);
+  }
+
+  /**
+   * Throws if {@code headers} includes a header that can't have a default value. Those headers
+   * describe how a particular message is framed or how its connection is managed.
+   */
+  public static void checkDefaults(Headers headers) {
+    for (int i = 0, size = headers.size(); i < size; i++) {
+      String name = headers.name(i);
+      if (name.equalsIgnoreCase("Content-Length")
+          || name.equalsIgnoreCase("Transfer-Encoding")
+          || name.equalsIgnoreCase("Host")
+          || name.equalsIgnoreCase("Connection")) {
+        throw new IllegalArgumentException("default headers may not include " + name);
+      }
+    }
+  }
+
+  private HeaderSet headerSet(String host) {
+    if (hostSets.isEmpty()) return defaultSet;
+    HeaderSet result = hostSets.get(host);
+    return result != null ? result : defaultSet;
+  }
+
+  private static boolean endsWith(Headers headers, int start, Headers suffix) {
+    for (int i = 0, size = suffix.size(); i < size; i++) {
+      if (!headers.name(start + i).equals(suffix.name(i))
+          || !headers.value(start + i).equals(suffix.value(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static final class HeaderSet {
+    final Headers headers;
+    final ByteString encoded;
+
+    HeaderSet(Headers headers) {
+      this.headers = headers;
+
+      Buffer buffer = new Buffer();
+      for (int i = 0, size = headers.size(); i < size; i++) {
+        buffer.writeUtf8(headers.name(i))
+            .writeUtf8(": ")
+            .writeUtf8(headers.value(i))
+            .writeUtf8("\r\n");
+      }
+      this.encoded = buffer.readByteString();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.http;
+
+import java.io.IOException;
+import javax.annotation.Nullable;
+import okhttp3.ContentEncoder;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * A request body that compresses another body with a {@link ContentEncoder} as it is written. The
+ * compressed length is unknown until the body has been written.
+ */
+public final class EncodedRequestBody extends RequestBody {
+  private final RequestBody delegate;
+  private final ContentEncoder encoder;
+
+  public EncodedRequestBody(RequestBody delegate, ContentEncoder encoder) {
+    this.delegate = delegate;
+    this.encoder = encoder;
+  }
+
+  public RequestBody delegate() {
+    return delegate;
+  }
+
+  public ContentEncoder encoder() {
+    return encoder;
+  }
+
+  @Override public @Nullable MediaType contentType() {
+    return delegate.contentType();
+  }
+
+  @Override public long contentLength() {
+    return -1L;
+  }
+
+  @Override public void writeTo(BufferedSink sink) throws IOException {
+    writeEncoded(sink);
+  }
+
+  /**
+   * Writes the encoded body to {@code sink}, returning the number of bytes before encoding. This
+   * doesn't close {@code sink}.
+   */
+  public long writeEncoded(BufferedSink sink) throws IOException {
+    Sink unclosed = new ForwardingSink(sink) {
+      @Override public void close() throws IOException {
+        // The encoder closes this to finish its stream; the caller closes the sink itself.
+      }
+    };
+    CountingSink counting = new CountingSink(encoder.encode(unclosed));
+    BufferedSink encodedSink = Okio.buffer(counting);
+    delegate.writeTo(encodedSink);
+    encodedSink.close();
+    return counting.byteCount;
+  }
+
+  static final class CountingSink extends ForwardingSink {
+    long byteCount;
+
+    CountingSink(Sink delegate) {
+      super(delegate);
+    }
+
+    @Override public void write(Buffer source, long byteCount) throws IOException {
+      super.write(source, byteCount);
+      this.byteCount += byteCount;
+    }
+  }
+}
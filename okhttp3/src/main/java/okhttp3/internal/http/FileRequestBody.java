@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import javax.annotation.Nullable;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.internal.Util;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * A request body that transmits the content of a file. When the body is written to a {@link
+ * FileTransferSink} that supports it, the file is transferred without copying it through okio
+ * buffers.
+ */
+public final class FileRequestBody extends RequestBody {
+  private final @Nullable MediaType contentType;
+  private final File file;
+
+  public FileRequestBody(@Nullable MediaType contentType, File file) {
+    this.contentType = contentType;
+    this.file = file;
+  }
+
+  @Override public @Nullable MediaType contentType() {
+    return contentType;
+  }
+
+  @Override public long contentLength() {
+    return file.length();
+  }
+
+  @Override public void writeTo(BufferedSink sink) throws IOException {
+    Source source = null;
+    try {
+      source = Okio.source(file);
+      sink.writeAll(source);
+    } finally {
+      Util.closeQuietly(source);
+    }
+  }
+
+  /** Writes {@code byteCount} bytes of this file to {@code sink}, returning the bytes written. */
+  public long transferTo(FileTransferSink sink, long byteCount) throws IOException {
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      return sink.transferFrom(in.getChannel(), 0L, byteCount);
+    } finally {
+      Util.closeQuietly(in);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.http;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import okio.Sink;
+
+/**
+ * A request body sink that can take bytes straight from a file. When the sink writes to a socket
+ * channel this uses {@link FileChannel#transferTo}, which lets the kernel copy the file to the
+ * socket without bringing it into the JVM.
+ */
+public interface FileTransferSink extends Sink {
+  /** Returns true if {@link #transferFrom} can be used with this sink. */
+  boolean supportsFileTransfer();
+
+  /**
+   * Writes {@code byteCount} bytes from {@code source} starting at {@code position}, returning the
+   * number of bytes written.
+   */
+  long transferFrom(FileChannel source, long position, long byteCount) throws IOException;
+}
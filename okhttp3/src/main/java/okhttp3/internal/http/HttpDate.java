@@ -24,7 +24,8 @@ import java.util.Locale;
 import static okhttp3.internal.Util.UTC;
 
 /**
- * Best-effort parser for HTTP dates.
+ * Best-effort parser for HTTP dates. Dates in the standard IMF-fixdate format are parsed and
+ * formatted directly; other formats fall back to {@link SimpleDateFormat}.
  */
 public final class HttpDate {
   /** The last four-digit year: "Fri, 31 Dec 9999 23:59:59 GMT". */
@@ -71,12 +72,31 @@ public final class HttpDate {
   private static final DateFormat[] BROWSER_COMPATIBLE_DATE_FORMATS =
       new DateFormat[BROWSER_COMPATIBLE_DATE_FORMAT_STRINGS.length];
 
+  private static final String[] DAY_NAMES = {"Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed"};
+  private static final String[] MONTH_NAMES = {
+      "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+  /** The length of a date in the standard format, like "Sun, 06 Nov 1994 08:49:37 GMT". */
+  private static final int STANDARD_LENGTH = 29;
+
+  /**
+   * The most recently formatted date. Responses and cache entries formatted in the same second
+   * share a string.
+   */
+  private static volatile FormattedDate lastFormatted =
+      new FormattedDate(0L, formatStandard(0L));
+
   /** Returns the date for {@code value}. Returns null if the value couldn't be parsed. */
   public static Date parse(String value) {
     if (value.length() == 0) {
       return null;
     }
 
+    long standard = parseStandard(value);
+    if (standard != -1L) {
+      return new Date(standard);
+    }
+
     ParsePosition position = new ParsePosition(0);
     Date result = STANDARD_DATE_FORMAT.get().parse(value, position);
     if (position.getIndex() == value.length()) {
@@ -109,9 +129,152 @@ public final class HttpDate {
     return null;
   }
 
+  /**
+   * Returns the milliseconds since the epoch for a date in the standard format, or -1 if {@code
+   * value} isn't a well-formed standard date that this can parse without {@link DateFormat}. The
+   * day name isn't checked against the date; the lenient formats above ignore it too.
+   */
+  private static long parseStandard(String value) {
+    if (value.length() != STANDARD_LENGTH
+        || value.charAt(3) != ','
+        || value.charAt(4) != ' '
+        || value.charAt(7) != ' '
+        || value.charAt(11) != ' '
+        || value.charAt(16) != ' '
+        || value.charAt(19) != ':'
+        || value.charAt(22) != ':'
+        || value.charAt(25) != ' '
+        || !value.regionMatches(26, "GMT", 0, 3)
+        || indexOf(DAY_NAMES, value, 0) == -1) {
+      return -1L;
+    }
+
+    int day = twoDigits(value, 5);
+    int month = indexOf(MONTH_NAMES, value, 8) + 1;
+    int century = twoDigits(value, 12);
+    int yearOfCentury = twoDigits(value, 14);
+    int year = century != -1 && yearOfCentury != -1 ? century * 100 + yearOfCentury : -1;
+    int hour = twoDigits(value, 17);
+    int minute = twoDigits(value, 20);
+    int second = twoDigits(value, 23);
+
+    // Dates before the Gregorian cutover are left to GregorianCalendar.
+    if (month == 0 || year < 1600 || day < 1 || day > daysInMonth(year, month)
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return -1L;
+    }
+
+    long days = daysSinceEpoch(year, month, day);
+    return (((days * 24L + hour) * 60L + minute) * 60L + second) * 1000L;
+  }
+
+  /** Returns the index of the 3-letter name at {@code pos} in {@code value}, or -1. */
+  private static int indexOf(String[] names, String value, int pos) {
+    for (int i = 0; i < names.length; i++) {
+      if (value.regionMatches(pos, names[i], 0, 3)) return i;
+    }
+    return -1;
+  }
+
+  /** Returns the value of the 2 decimal digits at {@code pos}, or -1 if they aren't digits. */
+  private static int twoDigits(String value, int pos) {
+    int tens = value.charAt(pos) - '0';
+    int ones = value.charAt(pos + 1) - '0';
+    if (tens < 0 || tens > 9 || ones < 0 || ones > 9) return -1;
+    return tens * 10 + ones;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return leap ? 29 : 28;
+      case 4: case 6: case 9: case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /** Returns the days from 1970-01-01 to a date in the proleptic Gregorian calendar. */
+  private static long daysSinceEpoch(int year, int month, int day) {
+    // Count years from March so that the leap day is the last day of the year.
+    long y = month <= 2 ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
   /** Returns the string for {@code value}. */
   public static String format(Date value) {
-    return STANDARD_DATE_FORMAT.get().format(value);
+    long millis = value.getTime();
+    if (millis < 0L || millis > MAX_DATE) {
+      return STANDARD_DATE_FORMAT.get().format(value);
+    }
+
+    long seconds = millis / 1000L;
+    FormattedDate last = lastFormatted;
+    if (last.seconds == seconds) return last.string;
+
+    String result = formatStandard(seconds);
+    lastFormatted = new FormattedDate(seconds, result);
+    return result;
+  }
+
+  /** Formats a non-negative number of seconds since the epoch in the standard format. */
+  private static String formatStandard(long epochSeconds) {
+    long days = epochSeconds / 86400L;
+    int secondOfDay = (int) (epochSeconds % 86400L);
+
+    // Invert daysSinceEpoch().
+    long z = days + 719468;
+    long era = z / 146097;
+    long dayOfEra = z - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int monthFromMarch = (int) ((5 * dayOfYear + 2) / 153);
+    int day = (int) (dayOfYear - (153 * monthFromMarch + 2) / 5 + 1);
+    int month = monthFromMarch < 10 ? monthFromMarch + 3 : monthFromMarch - 9;
+    int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+    char[] chars = new char[STANDARD_LENGTH];
+    DAY_NAMES[(int) (days % 7)].getChars(0, 3, chars, 0);
+    chars[3] = ',';
+    chars[4] = ' ';
+    writeTwoDigits(chars, 5, day);
+    chars[7] = ' ';
+    MONTH_NAMES[month - 1].getChars(0, 3, chars, 8);
+    chars[11] = ' ';
+    writeTwoDigits(chars, 12, year / 100);
+    writeTwoDigits(chars, 14, year % 100);
+    chars[16] = ' ';
+    writeTwoDigits(chars, 17, secondOfDay / 3600);
+    chars[19] = ':';
+    writeTwoDigits(chars, 20, secondOfDay / 60 % 60);
+    chars[22] = ':';
+    writeTwoDigits(chars, 23, secondOfDay % 60);
+    chars[25] = ' ';
+    chars[26] = 'G';
+    chars[27] = 'M';
+    chars[28] = 'T';
+    return new String(chars);
+  }
+
+  private static void writeTwoDigits(char[] chars, int pos, int value) {
+    chars[pos] = (char) ('0' + value / 10);
+    chars[pos + 1] = (char) ('0' + value % 10);
+  }
+
+  static final class FormattedDate {
+    final long seconds;
+    final String string;
+
+    FormattedDate(long seconds, String string) {
+      this.seconds = seconds;
+      this.string = string;
+    }
   }
 
   private HttpDate() {
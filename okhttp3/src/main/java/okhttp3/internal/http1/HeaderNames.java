@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.http1;
+
+import java.io.EOFException;
+import java.util.Locale;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Field names that show up in most HTTP/1.x responses. Reading one of these names returns a shared
+ * string instead of decoding a new one from the wire. Names are matched byte-for-byte, so a name is
+ * only shared if the peer sent it in its canonical or all-lowercase form.
+ */
+final class HeaderNames {
+  private static final String[] NAMES = {
+      "Accept-Ranges",
+      "Access-Control-Allow-Credentials",
+      "Access-Control-Allow-Headers",
+      "Access-Control-Allow-Methods",
+      "Access-Control-Allow-Origin",
+      "Age",
+      "Allow",
+      "Alt-Svc",
+      "Cache-Control",
+      "Connection",
+      "Content-Disposition",
+      "Content-Encoding",
+      "Content-Language",
+      "Content-Length",
+      "Content-Location",
+      "Content-Range",
+      "Content-Security-Policy",
+      "Content-Type",
+      "Date",
+      "ETag",
+      "Expires",
+      "Keep-Alive",
+      "Last-Modified",
+      "Link",
+      "Location",
+      "Pragma",
+      "Proxy-Authenticate",
+      "Referrer-Policy",
+      "Retry-After",
+      "Sec-WebSocket-Accept",
+      "Sec-WebSocket-Extensions",
+      "Sec-WebSocket-Protocol",
+      "Server",
+      "Set-Cookie",
+      "Strict-Transport-Security",
+      "Trailer",
+      "Transfer-Encoding",
+      "Upgrade",
+      "Vary",
+      "Via",
+      "WWW-Authenticate",
+      "Warning",
+      "X-Content-Type-Options",
+      "X-Frame-Options",
+      "X-XSS-Protection",
+  };
+
+  /** Encoded names indexed by their length in bytes. Each name's {@code utf8()} is precomputed. */
+  private static final ByteString[][] BY_LENGTH;
+
+  static {
+    int maxLength = 0;
+    for (String name : NAMES) {
+      maxLength = Math.max(maxLength, name.length());
+    }
+    int[] counts = new int[maxLength + 1];
+    for (String name : NAMES) {
+      counts[name.length()] += 2;
+    }
+    BY_LENGTH = new ByteString[maxLength + 1][];
+    for (int i = 0; i <= maxLength; i++) {
+      BY_LENGTH[i] = new ByteString[counts[i]];
+      counts[i] = 0;
+    }
+    for (String name : NAMES) {
+      ByteString[] bucket = BY_LENGTH[name.length()];
+      bucket[counts[name.length()]++] = ByteString.encodeUtf8(name);
+      bucket[counts[name.length()]++] = ByteString.encodeUtf8(name.toLowerCase(Locale.US));
+    }
+  }
+
+  private HeaderNames() {
+  }
+
+  /**
+   * Consumes {@code byteCount} bytes from {@code buffer} and returns them as a field name. This
+   * doesn't allocate if the bytes are a well-known name.
+   */
+  static String read(Buffer buffer, long byteCount) throws EOFException {
+    if (byteCount < BY_LENGTH.length) {
+      for (ByteString candidate : BY_LENGTH[(int) byteCount]) {
+        if (buffer.rangeEquals(0, candidate)) {
+          buffer.skip(byteCount);
+          return candidate.utf8();
+        }
+      }
+    }
+    return buffer.readUtf8(byteCount);
+  }
+}
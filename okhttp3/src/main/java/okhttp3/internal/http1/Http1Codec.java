@@ -17,10 +17,15 @@ package okhttp3.internal.http1;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.ProtocolException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import javax.annotation.Nullable;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -29,13 +34,16 @@ import okhttp3.internal.Util;
 import okhttp3.internal.connection.RealConnection;
 import okhttp3.internal.connection.StreamAllocation;
 import okhttp3.internal.http.HttpCodec;
+import okhttp3.internal.http.FileTransferSink;
 import okhttp3.internal.http.HttpHeaders;
 import okhttp3.internal.http.RealResponseBody;
 import okhttp3.internal.http.RequestLine;
 import okhttp3.internal.http.StatusLine;
+import okio.AsyncTimeout;
 import okio.Buffer;
 import okio.BufferedSink;
 import okio.BufferedSource;
+import okio.ByteString;
 import okio.ForwardingTimeout;
 import okio.Okio;
 import okio.Sink;
@@ -43,6 +51,7 @@ import okio.Source;
 import okio.Timeout;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static okhttp3.internal.Util.checkOffsetAndCount;
 import static okhttp3.internal.http.StatusLine.HTTP_CONTINUE;
 
@@ -75,6 +84,8 @@ public final class Http1Codec implements HttpCodec {
   private static final int STATE_READING_RESPONSE_BODY = 5;
   private static final int STATE_CLOSED = 6;
   private static final int HEADER_LIMIT = 256 * 1024;
+  private static final ByteString HTTP_1_0 = ByteString.encodeUtf8("HTTP/1.0 ");
+  private static final ByteString HTTP_1_1 = ByteString.encodeUtf8("HTTP/1.1 ");
 
   /** The client that configures this stream. May be null for HTTPS proxy tunnels. */
   final OkHttpClient client;
@@ -86,12 +97,37 @@ public final class Http1Codec implements HttpCodec {
   int state = STATE_IDLE;
   private long headerLimit = HEADER_LIMIT;
 
+  /** The exchanges sharing this codec's connection, or null if it isn't pipelining. */
+  private final @Nullable Http1Pipeline pipeline;
+  /** True if this exchange may share its connection with other pipelined exchanges. */
+  private final boolean pipelined;
+  /** This exchange's own timeouts, which it applies when it takes its turn on a pipeline. */
+  private final long readTimeoutNanos;
+  private final long writeTimeoutNanos;
+
   public Http1Codec(OkHttpClient client, StreamAllocation streamAllocation, BufferedSource source,
       BufferedSink sink) {
+    this(client, streamAllocation, source, sink, null, false, source.timeout().timeoutNanos(),
+        sink.timeout().timeoutNanos());
+  }
+
+  /**
+   * Creates a codec for an exchange on a connection that pipelines requests. If {@code pipelined}
+   * is false the exchange waits for exclusive use of the connection. Other exchanges may be using
+   * the connection's timeouts, so this exchange's timeouts are passed in and applied only when it
+   * writes its request and reads its response.
+   */
+  public Http1Codec(OkHttpClient client, StreamAllocation streamAllocation, BufferedSource source,
+      BufferedSink sink, @Nullable Http1Pipeline pipeline, boolean pipelined,
+      long readTimeoutNanos, long writeTimeoutNanos) {
     this.client = client;
     this.streamAllocation = streamAllocation;
     this.source = source;
     this.sink = sink;
+    this.pipeline = pipeline;
+    this.pipelined = pipelined;
+    this.readTimeoutNanos = readTimeoutNanos;
+    this.writeTimeoutNanos = writeTimeoutNanos;
   }
 
   @Override public Sink createRequestBody(Request request, long contentLength) {
@@ -112,6 +148,7 @@ public final class Http1Codec implements HttpCodec {
   @Override public void cancel() {
     RealConnection connection = streamAllocation.connection();
     if (connection != null) connection.cancel();
+    if (pipeline != null) pipeline.fail();
   }
 
   /**
@@ -127,7 +164,7 @@ public final class Http1Codec implements HttpCodec {
   @Override public void writeRequestHeaders(Request request) throws IOException {
     String requestLine = RequestLine.get(
         request, streamAllocation.connection().route().proxy().type());
-    writeRequest(request.headers(), requestLine);
+    writeRequest(request.headers(), requestLine, request.url().host());
   }
 
   @Override public ResponseBody openResponseBody(Response response) throws IOException {
@@ -153,46 +190,113 @@ public final class Http1Codec implements HttpCodec {
     return new RealResponseBody(contentType, -1L, Okio.buffer(newUnknownLengthSource()));
   }
 
+  /**
+   * Returns the channel of this codec's socket if bytes can be written to it directly, or null if
+   * they must go through {@link #sink}. Only plaintext sockets created by a {@link SocketChannel}
+   * have one.
+   */
+  private @Nullable SocketChannel socketChannel() {
+    if (streamAllocation == null) return null;
+    RealConnection connection = streamAllocation.connection();
+    if (connection == null || connection.handshake() != null) return null;
+    SocketChannel channel = connection.socket().getChannel();
+    return channel != null && channel.isBlocking() ? channel : null;
+  }
+
   /** Returns true if this connection is closed. */
   public boolean isClosed() {
     return state == STATE_CLOSED;
   }
 
   @Override public void flushRequest() throws IOException {
+    if (pipelined) return; // Pipelined requests are flushed as they're written.
     sink.flush();
   }
 
   @Override public void finishRequest() throws IOException {
+    if (pipelined) return; // Pipelined requests are flushed as they're written.
     sink.flush();
   }
 
   /** Returns bytes of a request header for sending on an HTTP transport. */
   public void writeRequest(Headers headers, String requestLine) throws IOException {
+    writeRequest(headers, requestLine, null);
+  }
+
+  /**
+   * Writes a request head. If {@code host} is non-null and {@code headers} end with the client's
+   * default headers for that host, those are written from their encoded form.
+   */
+  private void writeRequest(Headers headers, String requestLine, @Nullable String host)
+      throws IOException {
     if (state != STATE_IDLE) throw new IllegalStateException("state: " + state);
+    if (pipeline != null) {
+      // Other exchanges write to this sink concurrently. Hold the pipeline's lock so requests are
+      // written whole and in the order their responses will be read.
+      synchronized (pipeline) {
+        pipeline.enqueue(this, pipelined, writeTimeoutNanos);
+        sink.timeout().timeout(writeTimeoutNanos, NANOSECONDS);
+        try {
+          writeRequestHead(headers, requestLine, host);
+          if (pipelined) sink.flush();
+        } catch (IOException e) {
+          pipeline.fail();
+          throw e;
+        }
+      }
+    } else {
+      writeRequestHead(headers, requestLine, host);
+    }
+    state = STATE_OPEN_REQUEST_BODY;
+  }
+
+  private void writeRequestHead(Headers headers, String requestLine, @Nullable String host)
+      throws IOException {
     sink.writeUtf8(requestLine).writeUtf8("\r\n");
-    for (int i = 0, size = headers.size(); i < size; i++) {
-      sink.writeUtf8(headers.name(i))
-          .writeUtf8(": ")
-          .writeUtf8(headers.value(i))
-          .writeUtf8("\r\n");
+    if (host != null && client != null) {
+      Internal.instance.defaultHeaders(client).writeTo(sink, host, headers);
+    } else {
+      for (int i = 0, size = headers.size(); i < size; i++) {
+        sink.writeUtf8(headers.name(i))
+            .writeUtf8(": ")
+            .writeUtf8(headers.value(i))
+            .writeUtf8("\r\n");
+      }
     }
     sink.writeUtf8("\r\n");
-    state = STATE_OPEN_REQUEST_BODY;
   }
 
   @Override public Response.Builder readResponseHeaders(boolean expectContinue) throws IOException {
     if (state != STATE_OPEN_REQUEST_BODY && state != STATE_READ_RESPONSE_HEADERS) {
       throw new IllegalStateException("state: " + state);
     }
+    if (pipeline == null) return readResponseHead(expectContinue);
+
+    if (state == STATE_OPEN_REQUEST_BODY) {
+      // If this times out only this exchange's response is abandoned; those ahead can finish.
+      pipeline.awaitTurn(this, readTimeoutNanos);
+      // The exchange ahead of this one cleared the source's timeout when it finished.
+      source.timeout().timeout(readTimeoutNanos, NANOSECONDS);
+    }
+    try {
+      return readResponseHead(expectContinue);
+    } catch (IOException e) {
+      pipeline.fail();
+      throw e;
+    }
+  }
 
+  private Response.Builder readResponseHead(boolean expectContinue) throws IOException {
     try {
-      StatusLine statusLine = StatusLine.parse(readHeaderLine());
+      StatusLine statusLine = readStatusLine();
+      Headers headers = readHeaders();
+      if (pipeline != null) pipeline.responseReceived(statusLine.protocol, headers);
 
       Response.Builder responseBuilder = new Response.Builder()
           .protocol(statusLine.protocol)
           .code(statusLine.code)
           .message(statusLine.message)
-          .headers(readHeaders());
+          .headers(headers);
 
       if (expectContinue && statusLine.code == HTTP_CONTINUE) {
         return null;
@@ -211,18 +315,99 @@ public final class Http1Codec implements HttpCodec {
     }
   }
 
-  private String readHeaderLine() throws IOException {
-    String line = source.readUtf8LineStrict(headerLimit);
-    headerLimit -= line.length();
-    return line;
+  /**
+   * Buffers the next header line and returns the index of its terminating {@code '\n'} in the
+   * source's buffer. Header bytes are parsed in place so only field values and unfamiliar field
+   * names are decoded to strings.
+   */
+  private long requireHeaderLine() throws IOException {
+    long newline = source.indexOf((byte) '\n', 0, headerLimit + 1);
+    if (newline == -1L) {
+      throw new EOFException("\\n not found: limit=" + headerLimit);
+    }
+    return newline;
+  }
+
+  /** Returns the length of the line that ends at {@code newline}, excluding its terminator. */
+  private long headerLineLength(Buffer buffer, long newline) {
+    long length = newline > 0 && buffer.getByte(newline - 1) == '\r' ? newline - 1 : newline;
+    headerLimit -= length;
+    return length;
+  }
+
+  private StatusLine readStatusLine() throws IOException {
+    long newline = requireHeaderLine();
+    Buffer buffer = source.buffer();
+    long length = headerLineLength(buffer, newline);
+
+    // Fast path for well-formed lines like "HTTP/1.1 200 OK".
+    if (length >= 12
+        && (buffer.rangeEquals(0, HTTP_1_1) || buffer.rangeEquals(0, HTTP_1_0))
+        && (length == 12 || buffer.getByte(12) == ' ')) {
+      int code = digit(buffer.getByte(9)) * 100
+          + digit(buffer.getByte(10)) * 10
+          + digit(buffer.getByte(11));
+      if (code >= 0) {
+        Protocol protocol = buffer.getByte(7) == '1' ? Protocol.HTTP_1_1 : Protocol.HTTP_1_0;
+        String message = "";
+        if (length > 12) {
+          buffer.skip(13);
+          message = buffer.readUtf8(length - 13);
+        } else {
+          buffer.skip(12);
+        }
+        buffer.skip(newline + 1 - length);
+        return new StatusLine(protocol, code, message);
+      }
+    }
+
+    String line = buffer.readUtf8(length);
+    buffer.skip(newline + 1 - length);
+    return StatusLine.parse(line);
+  }
+
+  /** Returns the value of an ASCII digit, or a large negative number if {@code b} isn't one. */
+  private static int digit(byte b) {
+    return b >= '0' && b <= '9' ? b - '0' : -1000;
   }
 
   /** Reads headers or trailers. */
   public Headers readHeaders() throws IOException {
     Headers.Builder headers = new Headers.Builder();
     // parse the result headers until the first blank line
-    for (String line; (line = readHeaderLine()).length() != 0; ) {
-      Internal.instance.addLenient(headers, line);
+    while (true) {
+      long newline = requireHeaderLine();
+      Buffer buffer = source.buffer();
+      long end = headerLineLength(buffer, newline);
+      if (end == 0) {
+        buffer.skip(newline + 1);
+        break;
+      }
+
+      // Split on the first colon after the first byte, like Headers.Builder.addLenient(String).
+      String name = "";
+      long colon = buffer.indexOf((byte) ':', 1, end);
+      if (colon != -1L) {
+        name = HeaderNames.read(buffer, colon);
+        buffer.skip(1);
+        newline -= colon + 1;
+        end -= colon + 1;
+      } else if (buffer.getByte(0) == ':') {
+        // Work around empty header names and header names that start with a colon.
+        buffer.skip(1);
+        newline -= 1;
+        end -= 1;
+      }
+
+      // Trim the value without decoding the surrounding whitespace.
+      long start = 0;
+      while (start < end && (buffer.getByte(start) & 0xff) <= ' ') start++;
+      while (end > start && (buffer.getByte(end - 1) & 0xff) <= ' ') end--;
+      buffer.skip(start);
+      String value = buffer.readUtf8(end - start);
+      buffer.skip(newline + 1 - end);
+
+      Internal.instance.addLenient(headers, name, value);
     }
     return headers.build();
   }
@@ -256,6 +441,7 @@ public final class Http1Codec implements HttpCodec {
     if (streamAllocation == null) throw new IllegalStateException("streamAllocation == null");
     state = STATE_READING_RESPONSE_BODY;
     streamAllocation.noNewStreams();
+    if (pipeline != null) pipeline.fail(); // This response ends the connection.
     return new UnknownLengthSource();
   }
 
@@ -272,7 +458,7 @@ public final class Http1Codec implements HttpCodec {
   }
 
   /** An HTTP body with a fixed length known in advance. */
-  private final class FixedLengthSink implements Sink {
+  private final class FixedLengthSink implements FileTransferSink {
     private final ForwardingTimeout timeout = new ForwardingTimeout(sink.timeout());
     private boolean closed;
     private long bytesRemaining;
@@ -296,6 +482,50 @@ public final class Http1Codec implements HttpCodec {
       bytesRemaining -= byteCount;
     }
 
+    @Override public boolean supportsFileTransfer() {
+      return socketChannel() != null;
+    }
+
+    @Override public long transferFrom(FileChannel source, long position, long byteCount)
+        throws IOException {
+      if (closed) throw new IllegalStateException("closed");
+      if (byteCount > bytesRemaining) {
+        throw new ProtocolException("expected " + bytesRemaining
+            + " bytes but received " + byteCount);
+      }
+      SocketChannel channel = socketChannel();
+      if (channel == null) throw new IllegalStateException("file transfer unsupported");
+
+      sink.flush(); // Send the request headers first.
+
+      // Socket channels don't honor okio timeouts, so enforce the write timeout ourselves.
+      Timeout delegate = timeout.delegate();
+      AsyncTimeout asyncTimeout = delegate instanceof AsyncTimeout ? (AsyncTimeout) delegate : null;
+      long written = 0L;
+      if (asyncTimeout != null) asyncTimeout.enter();
+      try {
+        while (written < byteCount) {
+          long transferred = source.transferTo(position + written, byteCount - written, channel);
+          if (transferred <= 0L && position + written >= source.size()) {
+            throw new ProtocolException("unexpected end of file");
+          }
+          written += transferred;
+          bytesRemaining -= transferred;
+        }
+      } catch (IOException e) {
+        if (asyncTimeout != null && asyncTimeout.exit()) {
+          InterruptedIOException timeoutException = new InterruptedIOException("timeout");
+          timeoutException.initCause(e);
+          throw timeoutException;
+        }
+        throw e;
+      }
+      if (asyncTimeout != null && asyncTimeout.exit()) {
+        throw new InterruptedIOException("timeout");
+      }
+      return written;
+    }
+
     @Override public void flush() throws IOException {
       if (closed) return; // Don't throw; this stream might have been closed on the caller's behalf.
       sink.flush();
@@ -382,6 +612,9 @@ public final class Http1Codec implements HttpCodec {
       detachTimeout(timeout);
 
       state = STATE_CLOSED;
+      if (pipeline != null) {
+        pipeline.exchangeFinished(Http1Codec.this, reuseConnection);
+      }
       if (streamAllocation != null) {
         streamAllocation.streamFinished(!reuseConnection, Http1Codec.this, bytesRead, e);
       }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.http1;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import okhttp3.Headers;
+import okhttp3.Protocol;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * The exchanges in flight on an HTTP/1.1 connection that pipelines requests. Requests are written
+ * in the order they are enqueued, and each exchange waits for the exchanges ahead of it to consume
+ * their responses before it reads its own.
+ *
+ * <p>Pipelined exchanges can share the connection with each other, but an exchange that isn't
+ * pipelined (like one with a request body) waits until the connection is otherwise idle and keeps
+ * it to itself until its response is consumed.
+ *
+ * <p>Every wait is bounded by the waiting exchange's own timeout. An exchange that times out
+ * before its request is written leaves the pipeline untouched. One that times out waiting for its
+ * response abandons it: the exchanges ahead of it complete normally, but since nobody will read
+ * the abandoned response the pipeline fails when that response is next.
+ *
+ * <p>A thread never joins a pipeline that one of its own exchanges is already in. That thread may
+ * not consume the earlier response until its new call completes, so the new exchange would wait
+ * behind it forever.
+ *
+ * <p>If any exchange fails or abandons its response, the responses behind it can't be read. The
+ * pipeline fails and the exchanges queued behind it throw an {@link IOException}, so their calls
+ * are retried on another connection.
+ */
+public final class Http1Pipeline {
+  private final int maxExchanges;
+  private final Deque<Http1Codec> exchanges = new ArrayDeque<>();
+
+  /** The thread that wrote each exchange's request. */
+  private final Map<Http1Codec, Thread> owners = new HashMap<>();
+
+  /** Exchanges that gave up waiting for their responses. */
+  private final Set<Http1Codec> abandoned = new HashSet<>();
+
+  /** True while an exchange that isn't pipelined is in flight. */
+  private boolean exclusive;
+
+  /** True once the peer has returned a persistent HTTP/1.1 response on this connection. */
+  private boolean confirmed;
+
+  /** True if the peer has shown that it doesn't support pipelining. */
+  private boolean unsupported;
+
+  /**
+   * True if the responses of queued exchanges can no longer be read. Once true this is always true.
+   */
+  private boolean failed;
+
+  public Http1Pipeline(int maxExchanges) {
+    if (maxExchanges < 1) throw new IllegalArgumentException("maxExchanges < 1: " + maxExchanges);
+    this.maxExchanges = maxExchanges;
+  }
+
+  /**
+   * Returns true if a pipelined exchange from the calling thread can be queued on this connection
+   * in addition to the {@code allocationCount} streams it is carrying.
+   */
+  public synchronized boolean acceptsExchange(int allocationCount) {
+    return confirmed && !unsupported && !failed && !exclusive && abandoned.isEmpty()
+        && allocationCount < maxExchanges
+        && !owners.containsValue(Thread.currentThread());
+  }
+
+  /**
+   * Adds {@code exchange} to the back of this pipeline. The caller must write its request before
+   * releasing this pipeline's lock so that requests are written in the order they are enqueued.
+   * Waiting for exclusive use of the connection is bounded by {@code timeoutNanos}; if that is 0
+   * this fails immediately rather than wait.
+   */
+  void enqueue(Http1Codec exchange, boolean pipelined, long timeoutNanos) throws IOException {
+    assert (Thread.holdsLock(this));
+    if (owners.containsValue(Thread.currentThread())) {
+      throw new IOException("pipeline blocked by an exchange on this thread");
+    }
+    long deadlineNanos = System.nanoTime() + timeoutNanos;
+    while (exclusive || (!pipelined && !exchanges.isEmpty())) {
+      await(timeoutNanos, deadlineNanos);
+    }
+    if (failed) throw new IOException("pipeline failed");
+    exchanges.addLast(exchange);
+    owners.put(exchange, Thread.currentThread());
+    exclusive = !pipelined;
+  }
+
+  /**
+   * Waits until the exchanges ahead of {@code exchange} have consumed their responses. If this
+   * times out or is interrupted, {@code exchange} abandons its response.
+   */
+  synchronized void awaitTurn(Http1Codec exchange, long timeoutNanos) throws IOException {
+    long deadlineNanos = System.nanoTime() + timeoutNanos;
+    try {
+      while (exchanges.peekFirst() != exchange) {
+        await(timeoutNanos, deadlineNanos);
+      }
+    } catch (IOException e) {
+      if (!failed) abandoned.add(exchange);
+      throw e;
+    }
+  }
+
+  private void await(long timeoutNanos, long deadlineNanos) throws IOException {
+    if (failed) throw new IOException("pipeline failed");
+    long remainingNanos = deadlineNanos - System.nanoTime();
+    if (timeoutNanos == 0L || remainingNanos <= 0L) {
+      throw new SocketTimeoutException("timeout");
+    }
+    try {
+      NANOSECONDS.timedWait(this, remainingNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt(); // Retain interrupted status.
+      throw new InterruptedIOException();
+    }
+    if (failed) throw new IOException("pipeline failed");
+  }
+
+  /** Records the response head read by the exchange at the front of this pipeline. */
+  synchronized void responseReceived(Protocol protocol, Headers headers) {
+    if ("close".equalsIgnoreCase(headers.get("Connection"))) {
+      // The responses to the exchanges queued behind this one will never arrive.
+      fail();
+    } else if (protocol != Protocol.HTTP_1_1) {
+      unsupported = true;
+    } else {
+      confirmed = true;
+    }
+  }
+
+  /**
+   * Removes {@code exchange} from this pipeline. If the exchange didn't consume its entire
+   * response, or the next response was abandoned, the exchanges queued behind it fail.
+   */
+  synchronized void exchangeFinished(Http1Codec exchange, boolean responseConsumed) {
+    if (!exchanges.remove(exchange)) return;
+    owners.remove(exchange);
+    if (exchanges.isEmpty()) exclusive = false;
+    if (!responseConsumed || abandoned.contains(exchanges.peekFirst())) fail();
+    notifyAll();
+  }
+
+  synchronized void fail() {
+    failed = true;
+    notifyAll();
+  }
+}
@@ -15,7 +15,6 @@
  */
 package okhttp3.internal.tls;
 
-import java.security.GeneralSecurityException;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.ArrayDeque;
@@ -39,6 +38,7 @@ public final class BasicCertificateChainCleaner extends CertificateChainCleaner
   private static final int MAX_SIGNERS = 9;
 
   private final TrustRootIndex trustRootIndex;
+  private final SignatureCache signatureCache = new SignatureCache();
 
   public BasicCertificateChainCleaner(TrustRootIndex trustRootIndex) {
     this.trustRootIndex = trustRootIndex;
@@ -104,12 +104,7 @@ public final class BasicCertificateChainCleaner extends CertificateChainCleaner
   /** Returns true if {@code toVerify} was signed by {@code signingCert}'s public key. */
   private boolean verifySignature(X509Certificate toVerify, X509Certificate signingCert) {
     if (!toVerify.getIssuerDN().equals(signingCert.getSubjectDN())) return false;
-    try {
-      toVerify.verify(signingCert.getPublicKey());
-      return true;
-    } catch (GeneralSecurityException verifyFailed) {
-      return false;
-    }
+    return signatureCache.verify(toVerify, signingCert);
   }
 
   @Override public int hashCode() {
@@ -15,48 +15,76 @@
  */
 package okhttp3.internal.tls;
 
-import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import javax.security.auth.x500.X500Principal;
+import okio.ByteString;
 
-/** A simple index that of trusted root certificates that have been loaded into memory. */
+/**
+ * A simple index that of trusted root certificates that have been loaded into memory. Certificates
+ * are indexed by subject and by subject key identifier, so a certificate whose authority key
+ * identifier names its issuer's key is checked against that issuer first.
+ */
 public final class BasicTrustRootIndex implements TrustRootIndex {
   private final Map<X500Principal, Set<X509Certificate>> subjectToCaCerts;
+  private final Map<ByteString, Set<X509Certificate>> keyIdToCaCerts;
+  private final SignatureCache signatureCache = new SignatureCache();
 
   public BasicTrustRootIndex(X509Certificate... caCerts) {
     subjectToCaCerts = new LinkedHashMap<>();
+    keyIdToCaCerts = new LinkedHashMap<>();
     for (X509Certificate caCert : caCerts) {
-      X500Principal subject = caCert.getSubjectX500Principal();
-      Set<X509Certificate> subjectCaCerts = subjectToCaCerts.get(subject);
-      if (subjectCaCerts == null) {
-        subjectCaCerts = new LinkedHashSet<>(1);
-        subjectToCaCerts.put(subject, subjectCaCerts);
-      }
-      subjectCaCerts.add(caCert);
+      add(subjectToCaCerts, caCert.getSubjectX500Principal(), caCert);
+      ByteString keyId = KeyIdentifiers.subjectKeyIdentifier(caCert);
+      if (keyId != null) add(keyIdToCaCerts, keyId, caCert);
     }
   }
 
+  private static <K> void add(Map<K, Set<X509Certificate>> map, K key, X509Certificate caCert) {
+    Set<X509Certificate> caCerts = map.get(key);
+    if (caCerts == null) {
+      caCerts = new LinkedHashSet<>(1);
+      map.put(key, caCerts);
+    }
+    caCerts.add(caCert);
+  }
+
   @Override public X509Certificate findByIssuerAndSignature(X509Certificate cert) {
     X500Principal issuer = cert.getIssuerX500Principal();
     Set<X509Certificate> subjectCaCerts = subjectToCaCerts.get(issuer);
     if (subjectCaCerts == null) return null;
 
-    for (X509Certificate caCert : subjectCaCerts) {
-      PublicKey publicKey = caCert.getPublicKey();
-      try {
-        cert.verify(publicKey);
-        return caCert;
-      } catch (Exception ignored) {
+    // Try the CA certificates whose key the certificate names before the others with its issuer.
+    Set<X509Certificate> keyIdCaCerts = null;
+    if (subjectCaCerts.size() > 1) {
+      ByteString keyId = KeyIdentifiers.authorityKeyIdentifier(cert);
+      if (keyId != null) keyIdCaCerts = keyIdToCaCerts.get(keyId);
+    }
+    if (keyIdCaCerts != null) {
+      for (X509Certificate caCert : keyIdCaCerts) {
+        if (subjectCaCerts.contains(caCert) && verify(cert, caCert)) return caCert;
       }
     }
 
+    for (X509Certificate caCert : subjectCaCerts) {
+      if (keyIdCaCerts != null && keyIdCaCerts.contains(caCert)) continue; // Already tried.
+      if (verify(cert, caCert)) return caCert;
+    }
+
     return null;
   }
 
+  private boolean verify(X509Certificate cert, X509Certificate caCert) {
+    try {
+      return signatureCache.verify(cert, caCert);
+    } catch (Exception ignored) {
+      return false;
+    }
+  }
+
   @Override public boolean equals(Object other) {
     if (other == this) return true;
     return other instanceof BasicTrustRootIndex
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.tls;
+
+import java.security.cert.X509Certificate;
+import javax.annotation.Nullable;
+import okio.ByteString;
+
+/**
+ * Reads the key identifier extensions of X.509 certificates, which link a certificate to the key
+ * of its issuer without verifying a signature. These are hints only: a matching identifier still
+ * needs a signature check.
+ */
+final class KeyIdentifiers {
+  private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+  private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+
+  private static final int TAG_OCTET_STRING = 0x04;
+  private static final int TAG_SEQUENCE = 0x30;
+  private static final int TAG_KEY_IDENTIFIER = 0x80; // [0] IMPLICIT OCTET STRING.
+
+  private KeyIdentifiers() {
+  }
+
+  /** Returns the key identifier of {@code cert}'s own public key, or null if it has none. */
+  static @Nullable ByteString subjectKeyIdentifier(X509Certificate cert) {
+    // SubjectKeyIdentifier ::= KeyIdentifier ::= OCTET STRING
+    byte[] der = extensionValue(cert, SUBJECT_KEY_IDENTIFIER);
+    if (der == null) return null;
+    Reader reader = new Reader(der);
+    return reader.next(TAG_OCTET_STRING) ? reader.value() : null;
+  }
+
+  /** Returns the key identifier of the key that signed {@code cert}, or null if it has none. */
+  static @Nullable ByteString authorityKeyIdentifier(X509Certificate cert) {
+    // AuthorityKeyIdentifier ::= SEQUENCE { keyIdentifier [0] KeyIdentifier OPTIONAL, ... }
+    byte[] der = extensionValue(cert, AUTHORITY_KEY_IDENTIFIER);
+    if (der == null) return null;
+    Reader reader = new Reader(der);
+    if (!reader.next(TAG_SEQUENCE)) return null;
+    reader.enter();
+    return reader.next(TAG_KEY_IDENTIFIER) ? reader.value() : null;
+  }
+
+  /** Returns the DER-encoded value of an extension, unwrapped from its OCTET STRING. */
+  private static @Nullable byte[] extensionValue(X509Certificate cert, String oid) {
+    byte[] extension = cert.getExtensionValue(oid);
+    if (extension == null) return null;
+    Reader reader = new Reader(extension);
+    if (!reader.next(TAG_OCTET_STRING)) return null;
+    return reader.value().toByteArray();
+  }
+
+  /** A minimal reader for definite-length DER elements. */
+  static final class Reader {
+    private final byte[] der;
+    private int pos;
+    private int limit;
+    private int valueStart;
+    private int valueEnd;
+
+    Reader(byte[] der) {
+      this.der = der;
+      this.limit = der.length;
+    }
+
+    /** Reads the next element, returning true if it is well-formed and has tag {@code tag}. */
+    boolean next(int tag) {
+      if (pos + 2 > limit) return false;
+      int actualTag = der[pos++] & 0xff;
+      int length = der[pos++] & 0xff;
+      if (length > 0x7f) {
+        int lengthBytes = length & 0x7f;
+        if (lengthBytes == 0 || lengthBytes > 3 || pos + lengthBytes > limit) return false;
+        length = 0;
+        for (int i = 0; i < lengthBytes; i++) {
+          length = (length << 8) | (der[pos++] & 0xff);
+        }
+      }
+      if (length > limit - pos) return false;
+      valueStart = pos;
+      valueEnd = pos + length;
+      pos = valueEnd;
+      return actualTag == tag;
+    }
+
+    /** Reads the elements within the most recently read constructed element. */
+    void enter() {
+      pos = valueStart;
+      limit = valueEnd;
+    }
+
+    ByteString value() {
+      return ByteString.of(der, valueStart, valueEnd - valueStart);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.tls;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the outcome of recent signature checks so that chains presented repeatedly, and the
+ * trusted roots they lead to, aren't verified again on each handshake.
+ */
+final class SignatureCache {
+  private static final int MAX_ENTRIES = 256;
+
+  /** Whether the issuer's key verified the subject's signature, least recently used first. */
+  private final Map<Edge, Boolean> results = new LinkedHashMap<Edge, Boolean>(16, 0.75f, true) {
+    @Override protected boolean removeEldestEntry(Map.Entry<Edge, Boolean> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  /** Returns true if {@code toVerify} was signed by {@code signingCert}'s public key. */
+  boolean verify(X509Certificate toVerify, X509Certificate signingCert) {
+    Edge edge = new Edge(signingCert, toVerify);
+    synchronized (results) {
+      Boolean result = results.get(edge);
+      if (result != null) return result;
+    }
+
+    boolean verified;
+    try {
+      toVerify.verify(signingCert.getPublicKey());
+      verified = true;
+    } catch (GeneralSecurityException verifyFailed) {
+      verified = false;
+    }
+
+    synchronized (results) {
+      results.put(edge, verified);
+    }
+    return verified;
+  }
+
+  static final class Edge {
+    final X509Certificate issuer;
+    final X509Certificate subject;
+
+    Edge(X509Certificate issuer, X509Certificate subject) {
+      this.issuer = issuer;
+      this.subject = subject;
+    }
+
+    @Override public boolean equals(Object other) {
+      return other instanceof Edge
+          && ((Edge) other).issuer.equals(issuer)
+          && ((Edge) other).subject.equals(subject);
+    }
+
+    @Override public int hashCode() {
+      return 31 * issuer.hashCode() + subject.hashCode();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.ws;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Compresses messages for the permessage-deflate extension. Each message is deflated with a sync
+ * flush, and the empty stored block that ends the flush is omitted as RFC 7692 requires.
+ *
+ * <p>Messages are compressed by the writer thread, but a failing web socket may be closed from
+ * another thread. Methods are synchronized so that the native zlib state isn't released while it
+ * is in use.
+ */
+final class MessageDeflater implements Closeable {
+  /** The empty stored block that ends a sync flush, {@code 00 00 ff ff}. */
+  static final ByteString EMPTY_DEFLATE_BLOCK = ByteString.decodeHex("0000ffff");
+  /** The compressed payload of an empty message, as specified by RFC 7692 section 7.2.3.6. */
+  private static final ByteString EMPTY_MESSAGE = ByteString.decodeHex("00");
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true /* nowrap */);
+  private final boolean noContextTakeover;
+  private final byte[] output = new byte[8192];
+  private boolean closed;
+
+  MessageDeflater(boolean noContextTakeover) {
+    this.noContextTakeover = noContextTakeover;
+  }
+
+  /** Returns the compressed payload of a message whose uncompressed payload is {@code data}. */
+  synchronized ByteString deflate(ByteString data) throws IOException {
+    if (closed) throw new IOException("closed");
+
+    Buffer result = new Buffer();
+    deflater.setInput(data.toByteArray());
+    int count;
+    do {
+      count = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+      result.write(output, 0, count);
+    } while (count == output.length);
+
+    if (noContextTakeover) deflater.reset();
+
+    long size = result.size();
+    if (size >= EMPTY_DEFLATE_BLOCK.size()
+        && result.rangeEquals(size - EMPTY_DEFLATE_BLOCK.size(), EMPTY_DEFLATE_BLOCK)) {
+      size -= EMPTY_DEFLATE_BLOCK.size();
+    }
+    if (size == 0L) {
+      // Deflate emits nothing for an empty message; send an empty stored block header instead.
+      return EMPTY_MESSAGE;
+    }
+    return result.snapshot((int) size);
+  }
+
+  /** Releases the deflater's native memory. */
+  @Override public synchronized void close() {
+    if (closed) return;
+    closed = true;
+    deflater.end();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.ws;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import okio.Buffer;
+
+import static okhttp3.internal.ws.MessageDeflater.EMPTY_DEFLATE_BLOCK;
+
+/**
+ * Decompresses messages for the permessage-deflate extension. The frames of a message are inflated
+ * as they're read, and the empty stored block that the sender omitted is restored at its end.
+ *
+ * <p>Messages are inflated by the reader thread, but a failing web socket may be closed from
+ * another thread. Methods are synchronized so that the native zlib state isn't released while it
+ * is in use.
+ */
+final class MessageInflater implements Closeable {
+  private final Inflater inflater = new Inflater(true /* nowrap */);
+  private final boolean noContextTakeover;
+  private final byte[] input = new byte[8192];
+  private final byte[] output = new byte[8192];
+  private boolean closed;
+
+  MessageInflater(boolean noContextTakeover) {
+    this.noContextTakeover = noContextTakeover;
+  }
+
+  /**
+   * Inflates all of {@code compressed} into {@code sink}. Call this with each frame of a message,
+   * setting {@code isFinal} for the message's last frame.
+   */
+  synchronized void inflate(Buffer compressed, Buffer sink, boolean isFinal) throws IOException {
+    if (closed) throw new IOException("closed");
+
+    if (isFinal) compressed.write(EMPTY_DEFLATE_BLOCK);
+
+    try {
+      while (!compressed.exhausted() && !inflater.finished()) {
+        int inputCount = compressed.read(input);
+        inflater.setInput(input, 0, inputCount);
+        while (true) {
+          int count = inflater.inflate(output);
+          if (count > 0) {
+            sink.write(output, 0, count);
+          } else if (inflater.needsInput() || inflater.finished()) {
+            break;
+          } else {
+            throw new ProtocolException("Unable to inflate message");
+          }
+        }
+      }
+    } catch (DataFormatException e) {
+      ProtocolException protocolException = new ProtocolException("Unable to inflate message");
+      protocolException.initCause(e);
+      throw protocolException;
+    }
+
+    if (isFinal) {
+      // A final deflate block ends the stream, so the next message starts a new one.
+      compressed.clear();
+      if (noContextTakeover || inflater.finished()) inflater.reset();
+    }
+  }
+
+  /** Releases the inflater's native memory. */
+  @Override public synchronized void close() {
+    if (closed) return;
+    closed = true;
+    inflater.end();
+  }
+}
@@ -23,6 +23,7 @@ import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -37,13 +38,13 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okhttp3.WebSocketStats;
 import okhttp3.internal.Internal;
 import okhttp3.internal.Util;
 import okhttp3.internal.connection.StreamAllocation;
 import okio.BufferedSink;
 import okio.BufferedSource;
 import okio.ByteString;
-import okio.Okio;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static okhttp3.internal.Util.closeQuietly;
@@ -57,10 +58,16 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
   private static final List<Protocol> ONLY_HTTP1 = Collections.singletonList(Protocol.HTTP_1_1);
 
   /**
-   * The maximum number of bytes to enqueue. Rather than enqueueing beyond this limit we tear down
-   * the web socket! It's possible that we're writing faster than the peer can read.
+   * The default maximum number of bytes to enqueue. Rather than enqueueing beyond this limit we
+   * tear down the web socket! It's possible that we're writing faster than the peer can read.
    */
-  private static final long MAX_QUEUE_SIZE = 16 * 1024 * 1024; // 16 MiB.
+  public static final long DEFAULT_MAX_QUEUE_SIZE = 16 * 1024 * 1024; // 16 MiB.
+
+  /**
+   * The number of frames to write before yielding a shared scheduler's thread to other web
+   * sockets.
+   */
+  private static final int SHARED_WRITER_FRAME_LIMIT = 16;
 
   /**
    * The maximum amount of time after the client calls {@link #close} to wait for a graceful
@@ -76,6 +83,15 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
   private final long pingIntervalMillis;
   private final String key;
 
+  /** The maximum number of bytes to enqueue. */
+  private final long maxQueueSize;
+
+  /**
+   * True to tear down the web socket when a message would overflow the queue. Otherwise the
+   * message is rejected and the listener is notified when the queue drains.
+   */
+  private final boolean closeOnOverflow;
+
   /** Non-null for client web sockets. These can be canceled. */
   private Call call;
 
@@ -109,6 +125,15 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
   /** The total size in bytes of enqueued but not yet transmitted messages. */
   private long queueSize;
 
+  /** The number of enqueued but not yet transmitted messages. */
+  private int queuedMessageCount;
+
+  /** True if a message was rejected because the queue was full and it hasn't yet drained. */
+  private boolean queueFull;
+
+  /** The number of messages rejected because the queue was full. */
+  private int rejectedMessageCount;
+
   /** True if we've enqueued a close frame. No further message frames will be enqueued. */
   private boolean enqueuedClose;
 
@@ -139,8 +164,47 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
   /** True if we have sent a ping that is still awaiting a reply. */
   private boolean awaitingPong;
 
+  /** True if this web socket offered permessage-deflate in its handshake request. */
+  private boolean offeredCompression;
+
+  /** False if the client was configured to compress each message independently. */
+  private boolean contextTakeover = true;
+
+  /** The permessage-deflate parameters, or null if compression wasn't negotiated. */
+  private @Nullable WebSocketExtensions extensions;
+
+  /** Compression state to release when the streams are closed. Null without permessage-deflate. */
+  private @Nullable MessageDeflater messageDeflater;
+  private @Nullable MessageInflater messageInflater;
+
+  /** Received messages larger than this fail the web socket. */
+  private long maxMessageSize = Long.MAX_VALUE;
+
+  /** True to deliver binary messages to the listener as they're read. */
+  private boolean streamBinaryMessages;
+
+  /** The scheduler shared with other web sockets, or null to use a thread for this one. */
+  private @Nullable ScheduledExecutorService sharedScheduler;
+
+  /** Total size of the messages sent by this web socket, before compression. */
+  private long sentMessageBytes;
+
+  /** Total size of the message payloads sent by this web socket, after compression. */
+  private long sentPayloadBytes;
+
+  /** Total size of the messages received by this web socket, after decompression. */
+  private long receivedMessageBytes;
+
+  /** Total size of the message payloads received by this web socket, before decompression. */
+  private long receivedPayloadBytes;
+
   public RealWebSocket(Request request, WebSocketListener listener, Random random,
       long pingIntervalMillis) {
+    this(request, listener, random, pingIntervalMillis, DEFAULT_MAX_QUEUE_SIZE, true);
+  }
+
+  public RealWebSocket(Request request, WebSocketListener listener, Random random,
+      long pingIntervalMillis, long maxQueueSize, boolean closeOnOverflow) {
     if (!"GET".equals(request.method())) {
       throw new IllegalArgumentException("Request must be GET: " + request.method());
     }
@@ -148,6 +212,8 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     this.listener = listener;
     this.random = random;
     this.pingIntervalMillis = pingIntervalMillis;
+    this.maxQueueSize = maxQueueSize;
+    this.closeOnOverflow = closeOnOverflow;
 
     byte[] nonce = new byte[16];
     random.nextBytes(nonce);
@@ -156,7 +222,12 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     this.writerRunnable = new Runnable() {
       @Override public void run() {
         try {
+          int frameCount = 0;
           while (writeOneFrame()) {
+            if (sharedScheduler != null && ++frameCount == SHARED_WRITER_FRAME_LIMIT) {
+              yieldWriter();
+              return;
+            }
           }
         } catch (IOException e) {
           failWebSocket(e, null);
@@ -173,6 +244,11 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     return queueSize;
   }
 
+  @Override public synchronized WebSocketStats stats() {
+    return new WebSocketStats(queueSize, queuedMessageCount, maxQueueSize, rejectedMessageCount,
+        sentMessageBytes, sentPayloadBytes, receivedMessageBytes, receivedPayloadBytes);
+  }
+
   @Override public void cancel() {
     call.cancel();
   }
@@ -182,12 +258,21 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
         .eventListener(EventListener.NONE)
         .protocols(ONLY_HTTP1)
         .build();
-    final Request request = originalRequest.newBuilder()
+    Request.Builder requestBuilder = originalRequest.newBuilder()
         .header("Upgrade", "websocket")
         .header("Connection", "Upgrade")
         .header("Sec-WebSocket-Key", key)
-        .header("Sec-WebSocket-Version", "13")
-        .build();
+        .header("Sec-WebSocket-Version", "13");
+    maxMessageSize = client.webSocketMaxMessageSize();
+    streamBinaryMessages = client.webSocketStreamBinaryMessages();
+    sharedScheduler = client.webSocketScheduler();
+    if (client.webSocketCompression()) {
+      offeredCompression = true;
+      contextTakeover = client.webSocketContextTakeover();
+      requestBuilder.header(WebSocketExtensions.HEADER,
+          WebSocketExtensions.offer(client.webSocketContextTakeover()));
+    }
+    final Request request = requestBuilder.build();
     call = Internal.instance.newWebSocketCall(client, request);
     call.enqueue(new Callback() {
       @Override public void onResponse(Call call, Response response) {
@@ -247,13 +332,31 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
       throw new ProtocolException("Expected 'Sec-WebSocket-Accept' header value '"
           + acceptExpected + "' but was '" + headerAccept + "'");
     }
+
+    WebSocketExtensions extensions = WebSocketExtensions.parse(response.headers());
+    if (extensions != null && !offeredCompression) {
+      throw new ProtocolException("Unexpected " + WebSocketExtensions.HEADER + ": "
+          + response.header(WebSocketExtensions.HEADER));
+    }
+    this.extensions = extensions;
   }
 
   public void initReaderAndWriter(String name, Streams streams) throws IOException {
     synchronized (this) {
       this.streams = streams;
-      this.writer = new WebSocketWriter(streams.client, streams.sink, random);
-      this.executor = new ScheduledThreadPoolExecutor(1, Util.threadFactory(name, false));
+      if (extensions != null) {
+        // Honor our own preference even if the server didn't echo client_no_context_takeover.
+        this.messageDeflater = new MessageDeflater(streams.client
+            ? extensions.clientNoContextTakeover || !contextTakeover
+            : extensions.serverNoContextTakeover);
+        this.messageInflater = new MessageInflater(streams.client
+            ? extensions.serverNoContextTakeover
+            : extensions.clientNoContextTakeover);
+      }
+      this.writer = new WebSocketWriter(streams.client, streams.sink, random, messageDeflater);
+      this.executor = sharedScheduler != null
+          ? new SerialScheduledExecutor(sharedScheduler, new RejectionListener())
+          : new ScheduledThreadPoolExecutor(1, Util.threadFactory(name, false));
       if (pingIntervalMillis != 0) {
         executor.scheduleAtFixedRate(
             new PingRunnable(), pingIntervalMillis, pingIntervalMillis, MILLISECONDS);
@@ -263,7 +366,8 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
       }
     }
 
-    reader = new WebSocketReader(streams.client, streams.source, this);
+    reader = new WebSocketReader(streams.client, streams.source, this, messageInflater,
+        maxMessageSize, streamBinaryMessages);
   }
 
   /** Receive frames until there are no more. Invoked only by the reader thread. */
@@ -318,14 +422,27 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     return receivedPongCount;
   }
 
+  private synchronized void messageReceived() {
+    receivedMessageBytes += reader.messageSize;
+    receivedPayloadBytes += reader.messagePayloadSize;
+  }
+
   @Override public void onReadMessage(String text) throws IOException {
+    messageReceived();
     listener.onMessage(this, text);
   }
 
   @Override public void onReadMessage(ByteString bytes) throws IOException {
+    messageReceived();
     listener.onMessage(this, bytes);
   }
 
+  @Override public void onReadMessage(BufferedSource message) throws IOException {
+    listener.onMessage(this, message);
+    message.close(); // Skip whatever the listener didn't read.
+    messageReceived();
+  }
+
   @Override public synchronized void onReadPing(ByteString payload) {
     // Don't respond to pings after we've failed or sent the close frame.
     if (failed || (enqueuedClose && messageAndCloseQueue.isEmpty())) return;
@@ -364,7 +481,7 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
         listener.onClosed(this, code, reason);
       }
     } finally {
-      closeQuietly(toClose);
+      closeStreams(toClose);
     }
   }
 
@@ -384,14 +501,21 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     // Don't send new frames after we've failed or enqueued a close frame.
     if (failed || enqueuedClose) return false;
 
-    // If this frame overflows the buffer, reject it and close the web socket.
-    if (queueSize + data.size() > MAX_QUEUE_SIZE) {
-      close(CLOSE_CLIENT_GOING_AWAY, null);
+    // If this frame overflows the buffer, reject it and either close the web socket or notify the
+    // listener once there's room again.
+    if (queueSize + data.size() > maxQueueSize) {
+      rejectedMessageCount++;
+      if (closeOnOverflow) {
+        close(CLOSE_CLIENT_GOING_AWAY, null);
+      } else {
+        queueFull = true;
+      }
       return false;
     }
 
     // Enqueue the message frame.
     queueSize += data.size();
+    queuedMessageCount++;
     messageAndCloseQueue.add(new Message(formatOpcode, data));
     runWriter();
     return true;
@@ -440,6 +564,11 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     }
   }
 
+  /** Lets other web sockets on the shared scheduler write before this one writes more frames. */
+  private synchronized void yieldWriter() {
+    if (!executor.isShutdown()) runWriter();
+  }
+
   /**
    * Attempts to remove a single frame from a queue and send it. This prefers to write urgent pongs
    * before less urgent messages and close frames. For example it's possible that a caller will
@@ -460,6 +589,7 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     int receivedCloseCode = -1;
     String receivedCloseReason = null;
     Streams streamsToClose = null;
+    boolean queueDrained = false;
 
     synchronized (RealWebSocket.this) {
       if (failed) {
@@ -494,12 +624,19 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
 
       } else if (messageOrClose instanceof Message) {
         ByteString data = ((Message) messageOrClose).data;
-        BufferedSink sink = Okio.buffer(writer.newMessageSink(
-            ((Message) messageOrClose).formatOpcode, data.size()));
-        sink.write(data);
-        sink.close();
+        long payloadSize = writer.writeMessage(((Message) messageOrClose).formatOpcode, data);
         synchronized (this) {
           queueSize -= data.size();
+          queuedMessageCount--;
+          sentMessageBytes += data.size();
+          sentPayloadBytes += payloadSize;
+          if (queueFull && queueSize <= maxQueueSize / 2 && !enqueuedClose) {
+            queueFull = false;
+            queueDrained = true;
+          }
+        }
+        if (queueDrained) {
+          listener.onQueueDrained(this);
         }
 
       } else if (messageOrClose instanceof Close) {
@@ -517,7 +654,7 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
 
       return true;
     } finally {
-      closeQuietly(streamsToClose);
+      closeStreams(streamsToClose);
     }
   }
 
@@ -569,10 +706,31 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     try {
       listener.onFailure(this, e, response);
     } finally {
-      closeQuietly(streamsToClose);
+      closeStreams(streamsToClose);
     }
   }
 
+  /**
+   * Closes {@code streams}, if non-null, and releases the native memory of permessage-deflate.
+   * Every teardown path calls this with the streams it took, so it runs once per web socket.
+   */
+  private void closeStreams(@Nullable Streams streams) {
+    if (streams == null) return;
+
+    MessageDeflater messageDeflater;
+    MessageInflater messageInflater;
+    synchronized (this) {
+      messageDeflater = this.messageDeflater;
+      messageInflater = this.messageInflater;
+      this.messageDeflater = null;
+      this.messageInflater = null;
+    }
+
+    closeQuietly(streams);
+    if (messageDeflater != null) messageDeflater.close();
+    if (messageInflater != null) messageInflater.close();
+  }
+
   static final class Message {
     final int formatOpcode;
     final ByteString data;
@@ -607,6 +765,13 @@ public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCall
     }
   }
 
+  /** Fails this web socket if the shared scheduler stops running its writes. */
+  private final class RejectionListener implements SerialScheduledExecutor.RejectionListener {
+    @Override public void rejected(RejectedExecutionException e) {
+      failWebSocket(e, null);
+    }
+  }
+
   final class CancelRunnable implements Runnable {
     @Override public void run() {
       cancel();
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.ws;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs one web socket's writes, pings, and close timeouts on a scheduler that is shared by many web
+ * sockets. Tasks run one at a time in the order they were submitted, as if on a single thread.
+ * After each task the shared thread is yielded so that busy web sockets take turns with idle ones.
+ *
+ * <p>As with {@link java.util.concurrent.ScheduledThreadPoolExecutor}, shutting down cancels
+ * periodic tasks but runs tasks that were already submitted. Shutting down doesn't affect the
+ * shared scheduler.
+ */
+final class SerialScheduledExecutor extends AbstractExecutorService
+    implements ScheduledExecutorService {
+  /** Notified if the shared scheduler refuses to run this executor's tasks. */
+  interface RejectionListener {
+    void rejected(RejectedExecutionException e);
+  }
+
+  private final ScheduledExecutorService delegate;
+  private final RejectionListener rejectionListener;
+
+  // All mutable state is guarded by this.
+  private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+  private final List<ScheduledFuture<?>> periodicFutures = new ArrayList<>();
+
+  /** True if {@link #runner} is enqueued on the delegate or running. */
+  private boolean running;
+  private boolean shutdown;
+
+  private final Runnable runner = new Runnable() {
+    @Override public void run() {
+      Runnable task;
+      synchronized (SerialScheduledExecutor.this) {
+        task = tasks.poll();
+      }
+      try {
+        if (task != null) task.run();
+      } finally {
+        takeNextTurn();
+      }
+    }
+  };
+
+  SerialScheduledExecutor(ScheduledExecutorService delegate, RejectionListener rejectionListener) {
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    if (rejectionListener == null) throw new NullPointerException("rejectionListener == null");
+    this.delegate = delegate;
+    this.rejectionListener = rejectionListener;
+  }
+
+  /** Enqueues the runner for another turn after the other web sockets, if there's more to do. */
+  private void takeNextTurn() {
+    RejectedExecutionException rejected = null;
+    synchronized (this) {
+      if (!tasks.isEmpty()) {
+        try {
+          delegate.execute(runner);
+          return;
+        } catch (RejectedExecutionException e) {
+          // The shared scheduler was shut down. These tasks will never run.
+          rejected = e;
+          tasks.clear();
+        }
+      }
+      running = false;
+      notifyAll();
+    }
+    if (rejected != null) rejectionListener.rejected(rejected);
+  }
+
+  @Override public synchronized void execute(Runnable command) {
+    if (command == null) throw new NullPointerException("command == null");
+    if (shutdown) throw new RejectedExecutionException("shutdown");
+    enqueue(command);
+  }
+
+  private synchronized void enqueue(Runnable task) {
+    tasks.add(task);
+    if (!running) {
+      try {
+        delegate.execute(runner);
+      } catch (RejectedExecutionException e) {
+        tasks.removeLast();
+        throw e;
+      }
+      running = true;
+    }
+  }
+
+  @Override public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    if (command == null) throw new NullPointerException("command == null");
+    return schedule(new FutureTask<Void>(command, null), delay, unit);
+  }
+
+  @Override public <V> ScheduledFuture<V> schedule(
+      Callable<V> callable, long delay, TimeUnit unit) {
+    if (callable == null) throw new NullPointerException("callable == null");
+    return schedule(new FutureTask<>(callable), delay, unit);
+  }
+
+  /** Enqueues {@code task} after {@code delay} to run in turn with this executor's tasks. */
+  private synchronized <V> ScheduledFuture<V> schedule(
+      final FutureTask<V> task, long delay, TimeUnit unit) {
+    if (shutdown) throw new RejectedExecutionException("shutdown");
+    ScheduledFuture<?> timer = delegate.schedule(new Runnable() {
+      @Override public void run() {
+        if (!task.isDone()) enqueue(task);
+      }
+    }, delay, unit);
+    return new SerialFuture<>(timer, task);
+  }
+
+  @Override public synchronized ScheduledFuture<?> scheduleAtFixedRate(
+      Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (command == null) throw new NullPointerException("command == null");
+    if (shutdown) throw new RejectedExecutionException("shutdown");
+    ScheduledFuture<?> future = delegate.scheduleAtFixedRate(
+        new PeriodicRunnable(command), initialDelay, period, unit);
+    periodicFutures.add(future);
+    return future;
+  }
+
+  @Override public synchronized ScheduledFuture<?> scheduleWithFixedDelay(
+      Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (command == null) throw new NullPointerException("command == null");
+    if (shutdown) throw new RejectedExecutionException("shutdown");
+    ScheduledFuture<?> future = delegate.scheduleWithFixedDelay(
+        new PeriodicRunnable(command), initialDelay, delay, unit);
+    periodicFutures.add(future);
+    return future;
+  }
+
+  @Override public synchronized void shutdown() {
+    shutdown = true;
+    for (ScheduledFuture<?> future : periodicFutures) {
+      future.cancel(false);
+    }
+    periodicFutures.clear();
+    notifyAll();
+  }
+
+  @Override public synchronized List<Runnable> shutdownNow() {
+    shutdown();
+    List<Runnable> result = new ArrayList<>(tasks);
+    tasks.clear();
+    return result;
+  }
+
+  @Override public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override public synchronized boolean isTerminated() {
+    return shutdown && !running;
+  }
+
+  @Override public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long remainingNanos = unit.toNanos(timeout);
+    long deadlineNanos = System.nanoTime() + remainingNanos;
+    while (!isTerminated()) {
+      if (remainingNanos <= 0L) return false;
+      TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+      remainingNanos = deadlineNanos - System.nanoTime();
+    }
+    return true;
+  }
+
+  /** Enqueues each run of a periodic task until this executor is shut down. */
+  private final class PeriodicRunnable implements Runnable {
+    private final Runnable command;
+
+    PeriodicRunnable(Runnable command) {
+      this.command = command;
+    }
+
+    @Override public void run() {
+      synchronized (SerialScheduledExecutor.this) {
+        if (shutdown) return;
+        enqueue(command);
+      }
+    }
+  }
+
+  /** A task that waits on the shared scheduler's timer and then runs on this executor. */
+  private static final class SerialFuture<V> implements ScheduledFuture<V> {
+    private final ScheduledFuture<?> timer;
+    private final FutureTask<V> task;
+
+    SerialFuture(ScheduledFuture<?> timer, FutureTask<V> task) {
+      this.timer = timer;
+      this.task = task;
+    }
+
+    @Override public long getDelay(TimeUnit unit) {
+      return timer.getDelay(unit);
+    }
+
+    @Override public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override public boolean cancel(boolean mayInterruptIfRunning) {
+      timer.cancel(false);
+      return task.cancel(mayInterruptIfRunning);
+    }
+
+    @Override public boolean isCancelled() {
+      return task.isCancelled();
+    }
+
+    @Override public boolean isDone() {
+      return task.isDone();
+    }
+
+    @Override public V get() throws InterruptedException, ExecutionException {
+      return task.get();
+    }
+
+    @Override public V get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      return task.get(timeout, unit);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package okhttp3.internal.ws;
+
+import java.net.ProtocolException;
+import javax.annotation.Nullable;
+import okhttp3.Headers;
+
+/**
+ * The parameters of the <a href="https://tools.ietf.org/html/rfc7692">RFC 7692</a>
+ * permessage-deflate extension, as negotiated in a {@code Sec-WebSocket-Extensions} header.
+ */
+final class WebSocketExtensions {
+  static final String HEADER = "Sec-WebSocket-Extensions";
+  static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+  /** True if the client resets its compression context after each message. */
+  final boolean clientNoContextTakeover;
+  /** True if the server resets its compression context after each message. */
+  final boolean serverNoContextTakeover;
+  /** The server's LZ77 window size in bits, or -1 if it wasn't specified. */
+  final int serverMaxWindowBits;
+
+  WebSocketExtensions(boolean clientNoContextTakeover, boolean serverNoContextTakeover,
+      int serverMaxWindowBits) {
+    this.clientNoContextTakeover = clientNoContextTakeover;
+    this.serverNoContextTakeover = serverNoContextTakeover;
+    this.serverMaxWindowBits = serverMaxWindowBits;
+  }
+
+  /** Returns the extension offer a client makes in its handshake request. */
+  static String offer(boolean contextTakeover) {
+    return contextTakeover
+        ? PERMESSAGE_DEFLATE
+        : PERMESSAGE_DEFLATE + "; client_no_context_takeover; server_no_context_takeover";
+  }
+
+  /**
+   * Returns the permessage-deflate parameters accepted by the server in {@code responseHeaders},
+   * or null if it accepted no extensions.
+   *
+   * @throws ProtocolException if the server accepted an extension or parameter the client can't
+   *     support, such as one it didn't offer.
+   */
+  static @Nullable WebSocketExtensions parse(Headers responseHeaders) throws ProtocolException {
+    WebSocketExtensions result = null;
+    for (String header : responseHeaders.values(HEADER)) {
+      for (String extension : header.split(",")) {
+        String[] parameters = extension.split(";");
+        String name = parameters[0].trim();
+        if (name.isEmpty()) continue;
+        if (!name.equalsIgnoreCase(PERMESSAGE_DEFLATE) || result != null) {
+          throw new ProtocolException("Unexpected " + HEADER + ": " + header);
+        }
+
+        boolean clientNoContextTakeover = false;
+        boolean serverNoContextTakeover = false;
+        int serverMaxWindowBits = -1;
+        for (int i = 1; i < parameters.length; i++) {
+          String parameter = parameters[i].trim();
+          int equals = parameter.indexOf('=');
+          String parameterName = (equals != -1 ? parameter.substring(0, equals) : parameter).trim();
+          String value = equals != -1 ? unquote(parameter.substring(equals + 1).trim()) : null;
+
+          if (parameterName.equalsIgnoreCase("client_no_context_takeover") && value == null) {
+            clientNoContextTakeover = true;
+          } else if (parameterName.equalsIgnoreCase("server_no_context_takeover")
+              && value == null) {
+            serverNoContextTakeover = true;
+          } else if (parameterName.equalsIgnoreCase("server_max_window_bits") && value != null) {
+            serverMaxWindowBits = windowBits(value, header);
+          } else {
+            // This includes client_max_window_bits, which we never offer.
+            throw new ProtocolException("Unexpected " + HEADER + " parameter: " + header);
+          }
+        }
+        result = new WebSocketExtensions(
+            clientNoContextTakeover, serverNoContextTakeover, serverMaxWindowBits);
+      }
+    }
+    return result;
+  }
+
+  private static String unquote(String value) {
+    return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+        ? value.substring(1, value.length() - 1)
+        : value;
+  }
+
+  private static int windowBits(String value, String header) throws ProtocolException {
+    try {
+      int bits = Integer.parseInt(value);
+      if (bits >= 8 && bits <= 15) return bits;
+    } catch (NumberFormatException ignored) {
+    }
+    throw new ProtocolException("Unexpected " + HEADER + " window bits: " + header);
+  }
+}
@@ -92,14 +92,43 @@ public final class WebSocketProtocol {
   /** Used when an empty close frame was received (i.e., without a status code). */
   static final int CLOSE_NO_STATUS_CODE = 1005;
 
+  /**
+   * Messages smaller than this are sent uncompressed even if permessage-deflate was negotiated;
+   * compressing them saves too little to be worth the CPU.
+   */
+  static final int MINIMUM_DEFLATE_SIZE = 128;
+
   static void toggleMask(Buffer.UnsafeCursor cursor, byte[] key) {
-    int keyIndex = 0;
-    int keyLength = key.length;
+    toggleMask(cursor, key, 0);
+  }
+
+  /**
+   * Masks or unmasks the bytes from {@code cursor}'s position to the end of its buffer with the
+   * 4-byte {@code key}, starting at byte {@code keyIndex} of the key.
+   */
+  static void toggleMask(Buffer.UnsafeCursor cursor, byte[] key, int keyIndex) {
     do {
       byte[] buffer = cursor.data;
-      for (int i = cursor.start, end = cursor.end; i < end; i++, keyIndex++) {
-        keyIndex %= keyLength; // Reassign to prevent overflow breaking counter.
-        buffer[i] = (byte) (buffer[i] ^ key[keyIndex]);
+      int i = cursor.start;
+      int end = cursor.end;
+
+      // Mask four bytes at a time with the key rotated to this segment's offset. This avoids the
+      // per-byte key index arithmetic, which dominates the cost of masking large frames.
+      byte k0 = key[keyIndex];
+      byte k1 = key[(keyIndex + 1) & 3];
+      byte k2 = key[(keyIndex + 2) & 3];
+      byte k3 = key[(keyIndex + 3) & 3];
+      for (int wordEnd = end - 3; i < wordEnd; i += 4) {
+        buffer[i] ^= k0;
+        buffer[i + 1] ^= k1;
+        buffer[i + 2] ^= k2;
+        buffer[i + 3] ^= k3;
+      }
+
+      // Mask the segment's trailing bytes, which shifts the key for the next segment.
+      for (; i < end; i++) {
+        buffer[i] ^= key[keyIndex];
+        keyIndex = (keyIndex + 1) & 3;
       }
     } while (cursor.next() != -1);
   }
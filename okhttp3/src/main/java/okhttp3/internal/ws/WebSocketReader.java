@@ -18,9 +18,13 @@ package okhttp3.internal.ws;
 import java.io.IOException;
 import java.net.ProtocolException;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import okio.Buffer;
 import okio.BufferedSource;
 import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
 
 import static java.lang.Integer.toHexString;
 import static okhttp3.internal.ws.WebSocketProtocol.B0_FLAG_FIN;
@@ -52,6 +56,13 @@ final class WebSocketReader {
   public interface FrameCallback {
     void onReadMessage(String text) throws IOException;
     void onReadMessage(ByteString bytes) throws IOException;
+
+    /**
+     * Invoked instead of {@link #onReadMessage(ByteString)} when binary messages are streamed. The
+     * message's frames are read as {@code message} is consumed; the callback must close it before
+     * returning so that the reader can skip what wasn't read.
+     */
+    void onReadMessage(BufferedSource message) throws IOException;
     void onReadPing(ByteString buffer);
     void onReadPong(ByteString buffer);
     void onReadClose(int code, String reason);
@@ -61,6 +72,12 @@ final class WebSocketReader {
   final BufferedSource source;
   final FrameCallback frameCallback;
 
+  /** Messages larger than this, after decompression, fail the web socket. */
+  final long maxMessageSize;
+
+  /** True to deliver binary messages as a stream rather than buffering them in memory. */
+  final boolean streamBinaryMessages;
+
   boolean closed;
 
   // Stateful data about the current frame.
@@ -68,19 +85,41 @@ final class WebSocketReader {
   long frameLength;
   boolean isFinalFrame;
   boolean isControlFrame;
+  boolean isCompressedFrame;
+
+  /** The size of the most recently read message as received, before decompression. */
+  long messagePayloadSize;
+  /** The size of the most recently read message after decompression. */
+  long messageSize;
 
   private final Buffer controlFrameBuffer = new Buffer();
   private final Buffer messageFrameBuffer = new Buffer();
+  private final Buffer discardBuffer = new Buffer();
+
+  /** Non-null if permessage-deflate was negotiated. */
+  private final @Nullable MessageInflater messageInflater;
+  private final @Nullable Buffer compressedFrameBuffer;
 
   private final byte[] maskKey;
   private final Buffer.UnsafeCursor maskCursor;
 
-  WebSocketReader(boolean isClient, BufferedSource source, FrameCallback frameCallback) {
+  WebSocketReader(boolean isClient, BufferedSource source, FrameCallback frameCallback,
+      @Nullable MessageInflater messageInflater) {
+    this(isClient, source, frameCallback, messageInflater, Long.MAX_VALUE, false);
+  }
+
+  WebSocketReader(boolean isClient, BufferedSource source, FrameCallback frameCallback,
+      @Nullable MessageInflater messageInflater, long maxMessageSize,
+      boolean streamBinaryMessages) {
     if (source == null) throw new NullPointerException("source == null");
     if (frameCallback == null) throw new NullPointerException("frameCallback == null");
     this.isClient = isClient;
     this.source = source;
     this.frameCallback = frameCallback;
+    this.messageInflater = messageInflater;
+    this.compressedFrameBuffer = messageInflater != null ? new Buffer() : null;
+    this.maxMessageSize = maxMessageSize;
+    this.streamBinaryMessages = streamBinaryMessages;
 
     // Masks are only a concern for server writers.
     maskKey = isClient ? null : new byte[4];
@@ -94,7 +133,8 @@ final class WebSocketReader {
    *     <li>If it is a control frame this will result in a single call to {@link FrameCallback}.
    *     <li>If it is a message frame this will result in a single call to {@link
    *         FrameCallback#onReadMessage}. If the message spans multiple frames, each interleaved
-   *         control frame will result in a corresponding call to {@link FrameCallback}.
+   *         control frame will result in a corresponding call to {@link FrameCallback}. When
+   *         binary messages are streamed, these calls are made as the message is consumed.
    * </ul>
    */
   void processNextFrame() throws IOException {
@@ -131,10 +171,17 @@ final class WebSocketReader {
     boolean reservedFlag1 = (b0 & B0_FLAG_RSV1) != 0;
     boolean reservedFlag2 = (b0 & B0_FLAG_RSV2) != 0;
     boolean reservedFlag3 = (b0 & B0_FLAG_RSV3) != 0;
-    if (reservedFlag1 || reservedFlag2 || reservedFlag3) {
+    if (reservedFlag1) {
+      // With permessage-deflate, the first frame of each compressed message is flagged.
+      if (messageInflater == null || isControlFrame || opcode == OPCODE_CONTINUATION) {
+        throw new ProtocolException("Unexpected rsv1 flag");
+      }
+    }
+    if (reservedFlag2 || reservedFlag3) {
       // Reserved flags are for extensions which we currently do not support.
       throw new ProtocolException("Reserved flags are unsupported.");
     }
+    isCompressedFrame = reservedFlag1;
 
     int b1 = source.readByte() & 0xff;
 
@@ -213,7 +260,19 @@ final class WebSocketReader {
       throw new ProtocolException("Unknown opcode: " + toHexString(opcode));
     }
 
-    readMessage();
+    messagePayloadSize = 0L;
+    messageSize = 0L;
+    MessageSource message = new MessageSource(isCompressedFrame);
+
+    if (opcode == OPCODE_BINARY && streamBinaryMessages) {
+      frameCallback.onReadMessage(Okio.buffer(message));
+      message.close();
+      return;
+    }
+
+    while (message.readMessage(messageFrameBuffer, Long.MAX_VALUE) != -1L) {
+      // Read the whole message into memory.
+    }
 
     if (opcode == OPCODE_TEXT) {
       frameCallback.onReadMessage(messageFrameBuffer.readUtf8());
@@ -233,32 +292,104 @@ final class WebSocketReader {
     }
   }
 
+  /** Unmasks the last {@code byteCount} bytes of {@code buffer}, which start at {@code offset}. */
+  private void unmask(Buffer buffer, long byteCount, long offset) {
+    buffer.readAndWriteUnsafe(maskCursor);
+    maskCursor.seek(buffer.size() - byteCount);
+    toggleMask(maskCursor, maskKey, (int) (offset & 3));
+    maskCursor.close();
+  }
+
   /**
-   * Reads a message body into across one or more frames. Control frames that occur between
-   * fragments will be processed. If the message payload is masked this will unmask as it's being
-   * processed.
+   * The content of a message that spans one or more frames. Control frames that occur between
+   * fragments are processed as the message is read. If the message payload is masked this will
+   * unmask as it's being processed, and if it is compressed it is inflated as it is read.
    */
-  private void readMessage() throws IOException {
-    while (true) {
-      if (closed) throw new IOException("closed");
-
-      if (frameLength > 0) {
-        source.readFully(messageFrameBuffer, frameLength);
-
-        if (!isClient) {
-          messageFrameBuffer.readAndWriteUnsafe(maskCursor);
-          maskCursor.seek(messageFrameBuffer.size() - frameLength);
-          toggleMask(maskCursor, maskKey);
-          maskCursor.close();
+  private final class MessageSource implements Source {
+    private final boolean compressed;
+    private final Buffer inflatedBuffer;
+
+    /** The number of bytes of the current frame that have been read. */
+    private long frameOffset;
+    private boolean inflated;
+    private boolean closed;
+
+    MessageSource(boolean compressed) throws ProtocolException {
+      this.compressed = compressed;
+      this.inflatedBuffer = compressed ? new Buffer() : null;
+      if (!compressed) checkMessageSize(frameLength);
+    }
+
+    @Override public long read(Buffer sink, long byteCount) throws IOException {
+      if (byteCount < 0) throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+      if (closed) throw new IllegalStateException("closed");
+      return readMessage(sink, byteCount);
+    }
+
+    /** Reads up to {@code byteCount} bytes of the message, or returns -1 if it is exhausted. */
+    long readMessage(Buffer sink, long byteCount) throws IOException {
+      long read;
+      if (compressed) {
+        while (inflatedBuffer.size() == 0L) {
+          if (inflated) return -1L;
+          long payloadRead = readPayload(compressedFrameBuffer, 8192L);
+          inflated = payloadRead == -1L;
+          messageInflater.inflate(compressedFrameBuffer, inflatedBuffer, inflated);
+          checkMessageSize(inflatedBuffer.size());
+        }
+        read = inflatedBuffer.read(sink, byteCount);
+      } else {
+        read = readPayload(sink, byteCount);
+        if (read == -1L) return -1L;
+      }
+      messageSize += read;
+      return read;
+    }
+
+    /**
+     * Reads up to {@code byteCount} bytes of frame payload, advancing to continuation frames as
+     * each is consumed. Returns -1 once the final frame has been consumed.
+     */
+    private long readPayload(Buffer sink, long byteCount) throws IOException {
+      while (frameOffset == frameLength) {
+        if (isFinalFrame) return -1L; // We are exhausted and have no continuations.
+
+        readUntilNonControlFrame();
+        if (WebSocketReader.this.closed) throw new IOException("closed");
+        if (opcode != OPCODE_CONTINUATION) {
+          throw new ProtocolException("Expected continuation opcode. Got: " + toHexString(opcode));
         }
+        frameOffset = 0L;
+        if (!compressed) checkMessageSize(frameLength);
       }
 
-      if (isFinalFrame) break; // We are exhausted and have no continuations.
+      long toRead = Math.min(byteCount, frameLength - frameOffset);
+      source.readFully(sink, toRead);
+      if (!isClient && toRead > 0L) unmask(sink, toRead, frameOffset);
+      frameOffset += toRead;
+      messagePayloadSize += toRead;
+      return toRead;
+    }
+
+    /** Throws if {@code byteCount} more bytes would make this message too large. */
+    private void checkMessageSize(long byteCount) throws ProtocolException {
+      if (byteCount > maxMessageSize - messageSize) {
+        throw new ProtocolException("Message too big: > " + maxMessageSize + " bytes");
+      }
+    }
+
+    @Override public Timeout timeout() {
+      return source.timeout();
+    }
 
-      readUntilNonControlFrame();
-      if (opcode != OPCODE_CONTINUATION) {
-        throw new ProtocolException("Expected continuation opcode. Got: " + toHexString(opcode));
+    /** Skips the unread remainder of this message so the next frame can be read. */
+    @Override public void close() throws IOException {
+      if (closed) return;
+      closed = true;
+      while (readMessage(discardBuffer, 8192L) != -1L) {
+        discardBuffer.clear();
       }
+      discardBuffer.clear();
     }
   }
 }
@@ -17,18 +17,22 @@ package okhttp3.internal.ws;
 
 import java.io.IOException;
 import java.util.Random;
+import javax.annotation.Nullable;
 import okio.Buffer;
 import okio.BufferedSink;
 import okio.ByteString;
+import okio.Okio;
 import okio.Sink;
 import okio.Timeout;
 
 import static okhttp3.internal.ws.WebSocketProtocol.B0_FLAG_FIN;
+import static okhttp3.internal.ws.WebSocketProtocol.B0_FLAG_RSV1;
 import static okhttp3.internal.ws.WebSocketProtocol.B1_FLAG_MASK;
 import static okhttp3.internal.ws.WebSocketProtocol.OPCODE_CONTINUATION;
 import static okhttp3.internal.ws.WebSocketProtocol.OPCODE_CONTROL_CLOSE;
 import static okhttp3.internal.ws.WebSocketProtocol.OPCODE_CONTROL_PING;
 import static okhttp3.internal.ws.WebSocketProtocol.OPCODE_CONTROL_PONG;
+import static okhttp3.internal.ws.WebSocketProtocol.MINIMUM_DEFLATE_SIZE;
 import static okhttp3.internal.ws.WebSocketProtocol.PAYLOAD_BYTE_MAX;
 import static okhttp3.internal.ws.WebSocketProtocol.PAYLOAD_LONG;
 import static okhttp3.internal.ws.WebSocketProtocol.PAYLOAD_SHORT;
@@ -58,13 +62,18 @@ final class WebSocketWriter {
   private final byte[] maskKey;
   private final Buffer.UnsafeCursor maskCursor;
 
-  WebSocketWriter(boolean isClient, BufferedSink sink, Random random) {
+  /** Non-null if permessage-deflate was negotiated. */
+  private final @Nullable MessageDeflater messageDeflater;
+
+  WebSocketWriter(boolean isClient, BufferedSink sink, Random random,
+      @Nullable MessageDeflater messageDeflater) {
     if (sink == null) throw new NullPointerException("sink == null");
     if (random == null) throw new NullPointerException("random == null");
     this.isClient = isClient;
     this.sink = sink;
     this.sinkBuffer = sink.buffer();
     this.random = random;
+    this.messageDeflater = messageDeflater;
 
     // Masks are only a concern for client writers.
     maskKey = isClient ? new byte[4] : null;
@@ -146,6 +155,25 @@ final class WebSocketWriter {
     sink.flush();
   }
 
+  /**
+   * Send a message with the supplied {@code data}, compressing it if permessage-deflate was
+   * negotiated and it is large enough to benefit. Returns the size of the message payload as sent.
+   */
+  long writeMessage(int formatOpcode, ByteString data) throws IOException {
+    ByteString payload = data;
+    boolean compressed = false;
+    if (messageDeflater != null && data.size() >= MINIMUM_DEFLATE_SIZE) {
+      payload = messageDeflater.deflate(data);
+      compressed = true;
+    }
+
+    BufferedSink messageSink = Okio.buffer(newMessageSink(formatOpcode, payload.size()));
+    frameSink.compressed = compressed;
+    messageSink.write(payload);
+    messageSink.close();
+    return payload.size();
+  }
+
   /**
    * Stream a message payload as a series of frames. This allows control frames to be interleaved
    * between parts of the message.
@@ -160,19 +188,23 @@ final class WebSocketWriter {
     frameSink.formatOpcode = formatOpcode;
     frameSink.contentLength = contentLength;
     frameSink.isFirstFrame = true;
+    frameSink.compressed = false;
     frameSink.closed = false;
 
     return frameSink;
   }
 
   void writeMessageFrame(int formatOpcode, long byteCount, boolean isFirstFrame,
-      boolean isFinal) throws IOException {
+      boolean isFinal, boolean compressed) throws IOException {
     if (writerClosed) throw new IOException("closed");
 
     int b0 = isFirstFrame ? formatOpcode : OPCODE_CONTINUATION;
     if (isFinal) {
       b0 |= B0_FLAG_FIN;
     }
+    if (isFirstFrame && compressed) {
+      b0 |= B0_FLAG_RSV1; // Only the first frame of a compressed message is flagged.
+    }
     sinkBuffer.writeByte(b0);
 
     int b1 = 0;
@@ -216,6 +248,7 @@ final class WebSocketWriter {
     int formatOpcode;
     long contentLength;
     boolean isFirstFrame;
+    boolean compressed;
     boolean closed;
 
     @Override public void write(Buffer source, long byteCount) throws IOException {
@@ -230,7 +263,7 @@ final class WebSocketWriter {
 
       long emitCount = buffer.completeSegmentByteCount();
       if (emitCount > 0 && !deferWrite) {
-        writeMessageFrame(formatOpcode, emitCount, isFirstFrame, false /* final */);
+        writeMessageFrame(formatOpcode, emitCount, isFirstFrame, false /* final */, compressed);
         isFirstFrame = false;
       }
     }
@@ -238,7 +271,8 @@ final class WebSocketWriter {
     @Override public void flush() throws IOException {
       if (closed) throw new IOException("closed");
 
-      writeMessageFrame(formatOpcode, buffer.size(), isFirstFrame, false /* final */);
+      writeMessageFrame(formatOpcode, buffer.size(), isFirstFrame, false /* final */,
+          compressed);
       isFirstFrame = false;
     }
 
@@ -250,7 +284,8 @@ final class WebSocketWriter {
     @Override public void close() throws IOException {
       if (closed) throw new IOException("closed");
 
-      writeMessageFrame(formatOpcode, buffer.size(), isFirstFrame, true /* final */);
+      writeMessageFrame(formatOpcode, buffer.size(), isFirstFrame, true /* final */,
+          compressed);
       closed = true;
       activeWriter = false;
     }